@@ -1,20 +1,53 @@
 package ch.uzh.ifi.hase.soprafs23;
 
+import ch.uzh.ifi.hase.soprafs23.controller.UserJsonCache;
+import ch.uzh.ifi.hase.soprafs23.push.UserChangePusher;
+import ch.uzh.ifi.hase.soprafs23.service.DeletedUserPurger;
+import ch.uzh.ifi.hase.soprafs23.service.HotUserTracker;
+import ch.uzh.ifi.hase.soprafs23.service.IdleSessionSweeper;
+import ch.uzh.ifi.hase.soprafs23.service.UserSnapshotService;
+import ch.uzh.ifi.hase.soprafs23.service.UserStatsService;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @RestController
 @SpringBootApplication
+@EnableScheduling
 public class Application {
 
+  private static final int STARTUP_STEPS = 8192;
+
   public static void main(String[] args) {
-    SpringApplication.run(Application.class, args);
+    SpringApplication application = new SpringApplication(Application.class);
+    // records the startup steps for the StartupTimingReport, drained once the application is ready
+    application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+    application.run(args);
+  }
+
+  /**
+   * Beans that do their work when they are created (recount, restore, change
+   * log listeners, scheduled jobs) stay eager under spring.main.lazy-initialization.
+   */
+  @Bean
+  public static LazyInitializationExcludeFilter eagerBeans() {
+    return LazyInitializationExcludeFilter.forBeanTypes(UserStatsService.class, UserSnapshotService.class,
+            IdleSessionSweeper.class, DeletedUserPurger.class, HotUserTracker.class, UserJsonCache.class,
+            UserChangePusher.class);
   }
 
   @GetMapping(value = "/", produces = MediaType.TEXT_PLAIN_VALUE)
@@ -33,4 +66,24 @@ public class Application {
       }
     };
   }
+
+  /**
+   * Binary alternatives to JSON (Accept: application/cbor or
+   * application/x-jackson-smile), built from Boot's ObjectMapper builder so they
+   * encode the DTOs exactly like JSON does. They replace Spring's default
+   * instances in place, so JSON stays the default when any type is accepted.
+   * Servlet-only: slices without MVC (e.g. @DataJpaTest) have no ObjectMapper
+   * builder, and the reactive profile does not use them.
+   */
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2CborHttpMessageConverter(builder.createXmlMapper(false).factory(new CBORFactory()).build());
+  }
+
+  @Bean
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2SmileHttpMessageConverter(builder.createXmlMapper(false).factory(new SmileFactory()).build());
+  }
 }
@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Cluster Client
+ * HTTP calls between the nodes of the cluster: forwarded requests and
+ * invalidations. Nodes are identified by their base URL, e.g.
+ * http://localhost:8081. Invalidations carry the shared cluster.admin-token.
+ */
+@Component
+public class ClusterClient {
+
+  /**
+   * set on forwarded requests; a node never forwards such a request again, so
+   * nodes that briefly disagree about the ring cannot bounce a request around
+   */
+  public static final String FORWARDED_BY = "X-Cluster-Forwarded-By";
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+  // same header as the other admin endpoints
+  private static final String ADMIN_TOKEN = "X-Admin-Token";
+
+  private final Logger log = LoggerFactory.getLogger(ClusterClient.class);
+
+  private final String adminToken;
+  private volatile HttpClient client;
+
+  public ClusterClient(@Value("${cluster.admin-token:}") String adminToken) {
+    this.adminToken = adminToken;
+  }
+
+  /**
+   * @throws IOException if the node cannot be reached
+   */
+  public HttpResponse<byte[]> forward(String node, String self, String method, String pathAndQuery,
+                                      String contentType, String accept, byte[] body)
+          throws IOException, InterruptedException {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + pathAndQuery))
+            .timeout(TIMEOUT)
+            .header(FORWARDED_BY, self)
+            .method(method, body.length == 0
+                    ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+    if (contentType != null) {
+      request.header("Content-Type", contentType);
+    }
+    if (accept != null) {
+      request.header("Accept", accept);
+    }
+    return client().send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  /**
+   * tells the owner of a user that it changed; failures are only logged, the
+   * owner's entry is then stale until the next rebalance or change
+   */
+  public void invalidate(String node, String self, long userId) {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(node + "/internal/cluster/invalidate/" + userId))
+            .timeout(TIMEOUT)
+            .header(FORWARDED_BY, self)
+            .header(ADMIN_TOKEN, adminToken)
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build();
+    client().sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+      if (failure != null || response.statusCode() != 204) {
+        log.warn("Could not invalidate user {} on {}: {}", userId, node,
+                failure != null ? failure.toString() : "status " + response.statusCode());
+      }
+    });
+  }
+
+  private HttpClient client() {
+    HttpClient current = client;
+    if (current == null) {
+      synchronized (this) {
+        if (client == null) {
+          client = HttpClient.newBuilder()
+                  .version(HttpClient.Version.HTTP_1_1)
+                  .connectTimeout(Duration.ofSeconds(2))
+                  .build();
+        }
+        current = client;
+      }
+    }
+    return current;
+  }
+}
@@ -0,0 +1,154 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cluster Forwarding Filter
+ * Sends the requests served from the UserDirectory (GET /users/{userid} and
+ * the token check POST /users/{userid}/edit) to the node owning the user and
+ * copies its answer back. If the owner cannot be reached, the request is
+ * served here from the repository instead, with the body that was read for
+ * the forward replayed to the handler. Only registered when
+ * cluster.enabled=true.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterForwardingFilter extends OncePerRequestFilter {
+
+  private static final String USERS = "/users/";
+  private static final String EDIT = "/edit";
+
+  private final Logger log = LoggerFactory.getLogger(ClusterForwardingFilter.class);
+
+  private final UserDirectory userDirectory;
+  private final ClusterClient clusterClient;
+
+  public ClusterForwardingFilter(UserDirectory userDirectory, ClusterClient clusterClient) {
+    this.userDirectory = userDirectory;
+    this.clusterClient = clusterClient;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+          throws ServletException, IOException {
+    Long userId = routedUserId(request);
+    String owner = userId == null ? null : userDirectory.ownerOf(userId);
+    if (owner == null || owner.equals(userDirectory.getSelf()) || request.getHeader(ClusterClient.FORWARDED_BY) != null) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    String pathAndQuery = request.getRequestURI() + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+    BufferedBodyRequest bufferedRequest = new BufferedBodyRequest(request);
+    HttpResponse<byte[]> forwarded;
+    try {
+      forwarded = clusterClient.forward(owner, userDirectory.getSelf(), request.getMethod(), pathAndQuery,
+              request.getContentType(), request.getHeader("Accept"), bufferedRequest.body);
+    }
+    catch (IOException e) {
+      log.warn("Could not forward {} {} to {}, serving it here: {}", request.getMethod(), pathAndQuery, owner,
+              e.toString());
+      chain.doFilter(bufferedRequest, response);
+      return;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    response.setStatus(forwarded.statusCode());
+    forwarded.headers().firstValue("Content-Type").ifPresent(response::setContentType);
+    response.getOutputStream().write(forwarded.body());
+  }
+
+  /**
+   * @return the user id of a GET /users/{userid} or POST /users/{userid}/edit, null for any other request
+   */
+  static Long routedUserId(HttpServletRequest request) {
+    String path = request.getRequestURI();
+    if (!path.startsWith(USERS)) {
+      return null;
+    }
+    String rest = path.substring(USERS.length());
+    if ("GET".equals(request.getMethod())) {
+      return UserService.parseUserId(rest);
+    }
+    if ("POST".equals(request.getMethod()) && rest.endsWith(EDIT)) {
+      return UserService.parseUserId(rest.substring(0, rest.length() - EDIT.length()));
+    }
+    return null;
+  }
+
+  /**
+   * reads the body once and hands out a fresh stream over it on every call,
+   * the original stream is consumed by then
+   */
+  static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+    private final byte[] body;
+
+    BufferedBodyRequest(HttpServletRequest request) throws IOException {
+      super(request);
+      this.body = request.getInputStream().readAllBytes();
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+      ByteArrayInputStream in = new ByteArrayInputStream(body);
+      return new ServletInputStream() {
+        @Override
+        public boolean isFinished() {
+          return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+          throw new UnsupportedOperationException("The body is buffered, read it blocking");
+        }
+
+        @Override
+        public int read() {
+          return in.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+          return in.read(buffer, offset, length);
+        }
+      };
+    }
+
+    @Override
+    public BufferedReader getReader() {
+      Charset charset = getCharacterEncoding() == null ? StandardCharsets.UTF_8 : Charset.forName(getCharacterEncoding());
+      return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+  }
+}
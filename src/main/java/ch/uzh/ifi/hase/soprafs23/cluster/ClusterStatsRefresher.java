@@ -0,0 +1,31 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import ch.uzh.ifi.hase.soprafs23.service.UserStatsService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cluster Stats Refresher
+ * The UserStatsService only applies the changes made on its own node, so in a
+ * cluster its counters drift from the shared database. This recounts them
+ * every cluster.stats-refresh-ms; in between, GET /users/stats is missing the
+ * changes made on the other nodes since the last recount. Only registered when
+ * cluster.enabled=true.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterStatsRefresher {
+
+  private final UserStatsService userStatsService;
+
+  public ClusterStatsRefresher(UserStatsService userStatsService) {
+    this.userStatsService = userStatsService;
+  }
+
+  @Scheduled(fixedDelayString = "${cluster.stats-refresh-ms:60000}",
+          initialDelayString = "${cluster.stats-refresh-ms:60000}")
+  public void refresh() {
+    userStatsService.rebuild();
+  }
+}
@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent Hash Ring
+ * Maps user ids to nodes. Every node is placed on the ring at virtualNodes
+ * points, and an id belongs to the first node point at or after the id's
+ * hash. Adding or removing a node therefore only moves the ids next to that
+ * node's points (about 1/n of them), and the points spread the ids evenly.
+ * The ring is immutable; a membership change builds a new one.
+ */
+public final class ConsistentHashRing {
+
+  private final List<String> nodes;
+  private final TreeMap<Long, String> points = new TreeMap<>();
+
+  public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+    List<String> sorted = new ArrayList<>(nodes);
+    Collections.sort(sorted);
+    this.nodes = Collections.unmodifiableList(sorted);
+    for (String node : this.nodes) {
+      for (int i = 0; i < virtualNodes; i++) {
+        points.put(pointOf(node + "#" + i), node);
+      }
+    }
+  }
+
+  public List<String> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * @return the node owning the id, null on an empty ring
+   */
+  public String ownerOf(long userId) {
+    if (points.isEmpty()) {
+      return null;
+    }
+    Map.Entry<Long, String> point = points.ceilingEntry(hash(userId));
+    return point != null ? point.getValue() : points.firstEntry().getValue();
+  }
+
+  /**
+   * SplitMix64 finalizer: consecutive ids land all over the ring
+   */
+  static long hash(long userId) {
+    long z = userId + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private static long pointOf(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+      long point = 0;
+      for (int i = 0; i < 8; i++) {
+        point = (point << 8) | (digest[i] & 0xFF);
+      }
+      return point;
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every JVM ships MD5
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * User Directory
+ * With cluster.enabled, every node owns the users the ConsistentHashRing
+ * assigns to it and keeps them in memory, so getUserById and the token check
+ * for those users never touch the database; the ClusterForwardingFilter sends
+ * the requests for other users to their owner. The UserRepository stays the
+ * system of record (all nodes share the database), and writes may happen on
+ * any node: every change seen by the UserChangeLog drops the entry on the
+ * owner, directly or through POST /internal/cluster/invalidate/{userid}.
+ * Entries are loaded when the application starts and whenever the ring
+ * changes (rebalance), and on a miss. Each id maps to a version stripe that is
+ * bumped on invalidation, so a load racing with a change is not kept.
+ * Caches built on top of the directory (the UserJsonCache) only keep users
+ * this node owns and register an invalidation listener, which is called for
+ * every invalidated user, including those dropped by a rebalance.
+ * Without cluster.enabled this is a pass-through to the repository.
+ * Other state is per node as well and handled like this with cluster.enabled:
+ * - UserStatsService counters are recounted from the database by the
+ *   ClusterStatsRefresher, so they include the changes made on other nodes
+ * - the IdleSessionSweeper is off, a node only sees the activity of the
+ *   requests it serves and would log out users active on another node
+ * - the change feed (GET /users/changes) answers 404 and the WebSocket push is
+ *   off, both would only show the changes made on the node a client talks to
+ * - the IdempotencyStore does not remember keys, a retry may reach another
+ *   node; a retried POST /users gets 409 instead of the original answer
+ */
+@Component
+public class UserDirectory implements ApplicationRunner {
+
+  private static final int STRIPES = 1024;
+
+  private final Logger log = LoggerFactory.getLogger(UserDirectory.class);
+
+  private final UserRepository userRepository;
+  private final ClusterClient clusterClient;
+  private final boolean enabled;
+  private final String self;
+  private final int virtualNodes;
+  private final int pageSize;
+  private final List<String> configuredNodes;
+
+  private final ConcurrentHashMap<Long, User> users = new ConcurrentHashMap<>();
+  private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+  private final List<LongConsumer> invalidationListeners = new CopyOnWriteArrayList<>();
+  private volatile ConsistentHashRing ring;
+
+  public UserDirectory(@Qualifier("userRepository") UserRepository userRepository,
+                       UserChangeLog userChangeLog,
+                       ClusterClient clusterClient,
+                       @Value("${cluster.enabled:false}") boolean enabled,
+                       @Value("${cluster.self:}") String self,
+                       @Value("${cluster.nodes:}") String nodes,
+                       @Value("${cluster.virtual-nodes:128}") int virtualNodes,
+                       @Value("${cluster.rebalance-page-size:1000}") int pageSize) {
+    this.userRepository = userRepository;
+    this.clusterClient = clusterClient;
+    this.enabled = enabled;
+    this.self = self;
+    this.virtualNodes = Math.max(1, virtualNodes);
+    this.pageSize = Math.max(1, pageSize);
+    this.configuredNodes = enabled ? withSelf(parseNodes(nodes)) : List.of();
+    if (enabled) {
+      if (self.isEmpty()) {
+        throw new IllegalStateException("cluster.self must be set when cluster.enabled is true");
+      }
+      this.ring = new ConsistentHashRing(configuredNodes, this.virtualNodes);
+      userChangeLog.addListener(change -> changed(change.getUserId()));
+    }
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (enabled) {
+      rebalance();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public String getSelf() {
+    return self;
+  }
+
+  /**
+   * @return the node owning the user; this node when the cluster is disabled
+   */
+  public String ownerOf(long userId) {
+    return enabled ? ring.ownerOf(userId) : self;
+  }
+
+  public boolean owns(long userId) {
+    return !enabled || self.equals(ring.ownerOf(userId));
+  }
+
+  /**
+   * @return a detached copy of an owned user from memory, or the repository's
+   * answer for other users and with the cluster disabled
+   */
+  public Optional<User> findById(Long userId) {
+    if (!enabled || !owns(userId)) {
+      return userRepository.findById(userId);
+    }
+    User cached = users.get(userId);
+    if (cached != null) {
+      return Optional.of(copyOf(cached));
+    }
+    int stripe = stripe(userId);
+    long version = versions.get(stripe);
+    Optional<User> loaded = userRepository.findById(userId);
+    loaded.ifPresent(user -> keep(user, stripe, version));
+    return loaded;
+  }
+
+  /**
+   * drops the user from memory and notifies the invalidation listeners; the
+   * next lookup reloads it from the repository
+   */
+  public void invalidate(long userId) {
+    versions.incrementAndGet(stripe(userId));
+    users.remove(userId);
+    for (LongConsumer listener : invalidationListeners) {
+      listener.accept(userId);
+    }
+  }
+
+  /**
+   * @param listener called with the id of every user invalidated on this node
+   */
+  public void addInvalidationListener(LongConsumer listener) {
+    invalidationListeners.add(listener);
+  }
+
+  /**
+   * replaces the ring (this node is always part of it) and rebalances
+   * @throws IllegalArgumentException if a node is not one of cluster.nodes
+   */
+  public void setNodes(List<String> nodes) {
+    if (!enabled) {
+      throw new IllegalStateException("The cluster is not enabled");
+    }
+    for (String node : nodes) {
+      if (!configuredNodes.contains(node)) {
+        throw new IllegalArgumentException(node + " is not one of the configured cluster.nodes");
+      }
+    }
+    ring = new ConsistentHashRing(withSelf(nodes), virtualNodes);
+    log.info("Cluster ring changed to {}", ring.getNodes());
+    rebalance();
+  }
+
+  /**
+   * Drops the users this node no longer owns and loads the ones it owns now,
+   * page by page in id order, each page starting after the last id of the
+   * previous one. Lookups keep working meanwhile; a user that is not loaded
+   * yet is read from the repository.
+   */
+  public synchronized void rebalance() {
+    long start = System.nanoTime();
+    int dropped = 0;
+    for (Long userId : new ArrayList<>(users.keySet())) {
+      if (!owns(userId)) {
+        invalidate(userId);
+        dropped++;
+      }
+    }
+    int loaded = 0;
+    long lastId = Long.MIN_VALUE;
+    while (true) {
+      long[] pageVersions = new long[STRIPES];
+      for (int i = 0; i < STRIPES; i++) {
+        pageVersions[i] = versions.get(i);
+      }
+      List<User> batch = userRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, pageSize));
+      for (User user : batch) {
+        lastId = user.getId();
+        if (owns(user.getId())) {
+          int stripe = stripe(user.getId());
+          keep(user, stripe, pageVersions[stripe]);
+          loaded++;
+        }
+      }
+      if (batch.size() < pageSize) {
+        break;
+      }
+    }
+    log.info("Rebalanced the user directory in {} ms: {} users owned, {} dropped", (System.nanoTime() - start) / 1_000_000,
+            loaded, dropped);
+  }
+
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("enabled", enabled);
+    map.put("self", self);
+    map.put("nodes", enabled ? ring.getNodes() : List.of());
+    map.put("cachedUsers", users.size());
+    return map;
+  }
+
+  boolean isCached(long userId) {
+    return users.containsKey(userId);
+  }
+
+  private void changed(Long userId) {
+    if (userId == null) {
+      return;
+    }
+    String owner = ring.ownerOf(userId);
+    if (self.equals(owner)) {
+      invalidate(userId);
+    }
+    else {
+      clusterClient.invalidate(owner, self, userId);
+    }
+  }
+
+  /**
+   * caches a copy unless the user was invalidated since the version was read;
+   * the version is checked after the put, so an invalidation in between
+   * removes the entry either here or in invalidate
+   */
+  private void keep(User user, int stripe, long version) {
+    User copy = copyOf(user);
+    users.put(copy.getId(), copy);
+    if (versions.get(stripe) != version) {
+      users.remove(copy.getId(), copy);
+    }
+  }
+
+  private List<String> withSelf(List<String> nodes) {
+    List<String> all = new ArrayList<>(nodes);
+    if (!all.contains(self)) {
+      all.add(self);
+    }
+    return all;
+  }
+
+  private static List<String> parseNodes(String nodes) {
+    List<String> parsed = new ArrayList<>();
+    for (String node : Arrays.asList(nodes.split(","))) {
+      if (!node.isBlank()) {
+        parsed.add(node.trim());
+      }
+    }
+    return parsed;
+  }
+
+  private static int stripe(long userId) {
+    return (int) (ConsistentHashRing.hash(userId) & (STRIPES - 1));
+  }
+
+  /**
+   * callers may change the user they get (e.g. before saving it), the cached one must stay as it is
+   */
+  static User copyOf(User user) {
+    User copy = new User();
+    copy.setId(user.getId());
+    copy.setUsername(user.getUsername());
+    copy.setPassword(user.getPassword());
+    copy.setToken(user.getToken());
+    copy.setStatus(user.getStatus());
+    copy.setCreation_date(user.getCreation_date());
+    copy.setBirthday(user.getBirthday());
+    copy.setDeletedAt(user.getDeletedAt());
+    return copy;
+  }
+}
@@ -0,0 +1,5 @@
+package ch.uzh.ifi.hase.soprafs23.constant;
+
+public enum UserChangeType {
+  CREATED, UPDATED, LOGGED_IN, LOGGED_OUT, DELETED;
+}
@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.cluster.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cluster Controller
+ * Ring membership and invalidations of the partitioned UserDirectory; only
+ * registered when cluster.enabled=true. All endpoints require the shared
+ * cluster.admin-token in the X-Admin-Token header; the nodes send it along
+ * with their invalidations. A membership change has to be sent to every node
+ * and may only name nodes listed in cluster.nodes, e.g.
+ * curl -X PUT -H 'X-Admin-Token: ...' -H 'Content-Type: application/json' \
+ *   -d '["http://localhost:8081","http://localhost:8082"]' localhost:8081/internal/cluster/nodes
+ */
+@RestController
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClusterController {
+
+    private final UserDirectory userDirectory;
+    private final byte[] adminToken;
+
+    ClusterController(UserDirectory userDirectory, @Value("${cluster.admin-token:}") String adminToken) {
+        if (adminToken.isEmpty()) {
+            // the ring could otherwise be pointed at any host, which would then receive forwarded tokens
+            throw new IllegalStateException("cluster.admin-token must be set when cluster.enabled is true");
+        }
+        this.userDirectory = userDirectory;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @GetMapping("/internal/cluster")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> getCluster(@RequestHeader(value = ProfilingController.ADMIN_TOKEN, required = false) String token) {
+        authorize(token);
+        return userDirectory.toMap();
+    }
+
+    /**
+     * Replaces the ring and rebalances this node's partition before answering
+     */
+    @PutMapping("/internal/cluster/nodes")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> setNodes(@RequestHeader(value = ProfilingController.ADMIN_TOKEN, required = false) String token,
+                                        @RequestBody List<String> nodes) {
+        authorize(token);
+        if (nodes.isEmpty() || nodes.stream().anyMatch(node -> node == null || !node.startsWith("http"))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: nodes must be a list of base URLs");
+        }
+        try {
+            userDirectory.setNodes(nodes);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: " + e.getMessage());
+        }
+        return userDirectory.toMap();
+    }
+
+    /**
+     * Sent by the node where a user was changed to the node owning it
+     */
+    @PostMapping("/internal/cluster/invalidate/{userid}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void invalidate(@RequestHeader(value = ProfilingController.ADMIN_TOKEN, required = false) String token,
+                           @PathVariable String userid) {
+        authorize(token);
+        Long id = UserService.parseUserId(userid);
+        if (id == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: invalid user id");
+        }
+        // drops the serialized profile in the UserJsonCache as well
+        userDirectory.invalidate(id);
+    }
+
+    private void authorize(String token) {
+        // constant time, so the token cannot be guessed byte by byte
+        if (token == null || !MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Error: Admin token missing or wrong");
+        }
+    }
+}
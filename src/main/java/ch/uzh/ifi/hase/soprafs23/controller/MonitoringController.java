@@ -0,0 +1,69 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.monitoring.ConnectionPoolMetrics;
+import ch.uzh.ifi.hase.soprafs23.service.HotUserTracker;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Monitoring Controller
+ * Read-only operational endpoints under /internal.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MonitoringController {
+
+    private final ConnectionPoolMetrics connectionPoolMetrics;
+    private final ApplicationAvailability applicationAvailability;
+    private final HotUserTracker hotUserTracker;
+
+    MonitoringController(ConnectionPoolMetrics connectionPoolMetrics, ApplicationAvailability applicationAvailability,
+                         HotUserTracker hotUserTracker) {
+        this.connectionPoolMetrics = connectionPoolMetrics;
+        this.applicationAvailability = applicationAvailability;
+        this.hotUserTracker = hotUserTracker;
+    }
+
+    /**
+     * Readiness probe for the load balancer: 503 until startup (including the
+     * StartupWarmup) is complete
+     */
+    @GetMapping("/internal/ready")
+    public ResponseEntity<Map<String, Object>> getReadiness() {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        HttpStatus status = state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(Map.of("readiness", state));
+    }
+
+    /**
+     * Connection pool gauges plus acquire and usage time histograms
+     */
+    @GetMapping("/internal/pool")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> getPoolMetrics() {
+        return connectionPoolMetrics.toMap();
+    }
+
+    /**
+     * The most read user profiles (GET /users/{userid}, token lookups) with
+     * their approximate, decaying lookup counts, hottest first
+     */
+    @GetMapping("/internal/hot-users")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<Map<String, Object>> getHotUsers(@RequestParam(defaultValue = "20") int limit) {
+        return hotUserTracker.top(Math.max(0, limit));
+    }
+}
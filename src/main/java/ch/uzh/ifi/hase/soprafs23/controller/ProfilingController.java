@@ -0,0 +1,114 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.monitoring.FlightRecorderProfiler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.util.Map;
+
+/**
+ * Profiling Controller
+ * Admin endpoints for on-demand Java Flight Recorder sessions, e.g.
+ * curl -X POST -H 'X-Admin-Token: ...' 'localhost:8080/internal/profiling/start?durationSeconds=60'
+ * curl -X POST -H 'X-Admin-Token: ...' localhost:8080/internal/profiling/stop
+ * The endpoints only exist when profiling.admin-token is set.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProfilingController {
+
+    static final String ADMIN_TOKEN = "X-Admin-Token";
+
+    private final FlightRecorderProfiler profiler;
+    private final byte[] adminToken;
+
+    ProfilingController(FlightRecorderProfiler profiler, @Value("${profiling.admin-token:}") String adminToken) {
+        this.profiler = profiler;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("/internal/profiling/start")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> startRecording(@RequestHeader(value = ADMIN_TOKEN, required = false) String token,
+                                              @RequestParam(defaultValue = "profile") String settings,
+                                              @RequestParam(defaultValue = "60") long durationSeconds)
+            throws IOException, ParseException {
+        authorize(token);
+        boolean started;
+        try {
+            started = profiler.start(settings, durationSeconds);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: " + e.getMessage());
+        }
+        if (!started) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Error: A recording is already running or being summarized");
+        }
+        return profiler.status();
+    }
+
+    /**
+     * Stops the recording and returns the top allocation sites and hot methods
+     */
+    @PostMapping("/internal/profiling/stop")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> stopRecording(@RequestHeader(value = ADMIN_TOKEN, required = false) String token)
+            throws IOException {
+        authorize(token);
+        Map<String, Object> summary = profiler.stop();
+        if (summary == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Error: No recording was started");
+        }
+        return summary;
+    }
+
+    @GetMapping("/internal/profiling")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public Map<String, Object> getRecordingStatus(@RequestHeader(value = ADMIN_TOKEN, required = false) String token) {
+        authorize(token);
+        return profiler.status();
+    }
+
+    /**
+     * The raw .jfr file of the last finished recording, for JDK Mission Control
+     */
+    @GetMapping("/internal/profiling/recording")
+    public ResponseEntity<Resource> getRecording(@RequestHeader(value = ADMIN_TOKEN, required = false) String token) {
+        authorize(token);
+        Path file = profiler.recordingFile();
+        if (file == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Error: No finished recording");
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.jfr\"")
+                .body(new FileSystemResource(file));
+    }
+
+    private void authorize(String token) {
+        // without a configured token the endpoints are not exposed at all
+        if (adminToken.length == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        // constant time, so the token cannot be guessed byte by byte
+        if (token == null || !MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Error: Admin token missing or wrong");
+        }
+    }
+}
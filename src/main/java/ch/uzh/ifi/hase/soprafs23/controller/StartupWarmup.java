@@ -0,0 +1,154 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.service.HotUserTracker;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup Warmup
+ * Runs the read paths of the hottest users a few times before the
+ * application reports ready: UserService lookups, the
+ * repository queries (so Hibernate has its query plans), the DTOMapper, Jackson
+ * and the UserJsonCache. This keeps the first real requests after a deploy
+ * from paying for a cold JIT and empty caches.
+ * The hottest users are the top-k of the HotUserTracker (read back from
+ * hot-users.file after a restart). While it knows fewer than warmup.hot-users,
+ * as in a fresh process, ONLINE users fill up the rest. The warm-up's own
+ * lookups are not counted by the tracker, which only records client reads.
+ * Spring Boot only switches the readiness state to ACCEPTING_TRAFFIC once all
+ * ApplicationRunners are done, so GET /internal/ready stays 503 during the
+ * warm-up. The warm-up stops at warmup.budget-ms, ready or not.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+  private final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+  private final UserService userService;
+  private final UserRepository userRepository;
+  private final UserJsonCache userJsonCache;
+  private final HotUserTracker hotUserTracker;
+  private final ObjectMapper objectMapper;
+  private final boolean enabled;
+  private final long budgetNanos;
+  private final int hotUsers;
+  private final int rounds;
+
+  public StartupWarmup(UserService userService,
+                       @Qualifier("userRepository") UserRepository userRepository,
+                       UserJsonCache userJsonCache,
+                       HotUserTracker hotUserTracker,
+                       ObjectMapper objectMapper,
+                       @Value("${warmup.enabled:true}") boolean enabled,
+                       @Value("${warmup.budget-ms:30000}") long budgetMillis,
+                       @Value("${warmup.hot-users:200}") int hotUsers,
+                       @Value("${warmup.rounds:5}") int rounds) {
+    this.userService = userService;
+    this.userRepository = userRepository;
+    this.userJsonCache = userJsonCache;
+    this.hotUserTracker = hotUserTracker;
+    this.objectMapper = objectMapper;
+    this.enabled = enabled;
+    this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    this.hotUsers = hotUsers;
+    this.rounds = rounds;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (!enabled) {
+      return;
+    }
+    long start = System.nanoTime();
+    long deadline = start + budgetNanos;
+    int completed = 0;
+    while (completed < rounds && System.nanoTime() < deadline) {
+      if (warmupRound(deadline)) {
+        completed++;
+      }
+      else {
+        break;
+      }
+    }
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    if (completed < rounds) {
+      log.warn("Warm-up stopped by its {} ms budget after {} of {} rounds",
+              TimeUnit.NANOSECONDS.toMillis(budgetNanos), completed, rounds);
+    }
+    else {
+      log.info("Warm-up finished {} rounds in {} ms", completed, elapsedMillis);
+    }
+  }
+
+  /**
+   * @return false if the deadline passed before the round was complete
+   */
+  boolean warmupRound(long deadline) {
+    Set<Long> hot = hotUserIds();
+    List<UserGetDTO> userGetDTOs = new ArrayList<>(hot.size());
+    for (Long id : hot) {
+      if (System.nanoTime() >= deadline) {
+        return false;
+      }
+      String userid = String.valueOf(id);
+      try {
+        User user = userService.getUserById(userid);
+        userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+        userJsonCache.get(id, () -> DTOMapper.INSTANCE.convertEntityToUserGetDTO(userService.getUserById(userid)));
+        userRepository.findByUsername(user.getUsername());
+      }
+      catch (ResponseStatusException e) {
+        // the user was removed since the list was read
+      }
+    }
+    // the lookups of login, logout and the list endpoints, misses included
+    userRepository.findByToken(new UUID(0, 0));
+    userService.getUsers(UserStatus.OFFLINE, 0, 1);
+    userService.getUpcomingBirthdays(7);
+    userService.getStats(30);
+    try {
+      objectMapper.writeValueAsBytes(userGetDTOs);
+    }
+    catch (JsonProcessingException e) {
+      log.warn("Warm-up could not serialize the users", e);
+    }
+    return System.nanoTime() < deadline;
+  }
+
+  /**
+   * @return up to warmup.hot-users ids, the tracker's hottest first
+   */
+  private Set<Long> hotUserIds() {
+    Set<Long> hot = new LinkedHashSet<>(hotUserTracker.topIds(hotUsers));
+    if (hot.size() < hotUsers) {
+      for (User user : userService.getUsers(UserStatus.ONLINE, 0, hotUsers)) {
+        if (hot.size() >= hotUsers) {
+          break;
+        }
+        hot.add(user.getId());
+      }
+    }
+    return hot;
+  }
+}
@@ -1,16 +1,28 @@
 package ch.uzh.ifi.hase.soprafs23.controller;
 
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserChangeDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserStatsDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.service.HotUserTracker;
+import ch.uzh.ifi.hase.soprafs23.service.IdempotencyStore;
+import ch.uzh.ifi.hase.soprafs23.service.UserChange;
 import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,39 +34,119 @@ import java.util.List;
  * UserService and finally return the result.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserController {
 
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String BEARER = "Bearer ";
+    static final int MAX_CHANGES_LIMIT = 1000;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BIRTHDAY_DAYS = 31;
+    static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
     private final UserService userService;
+    private final IdempotencyStore idempotencyStore;
+    private final UserJsonCache userJsonCache;
+    private final HotUserTracker hotUserTracker;
+    private final UserGetDTOConverter userGetDTOConverter;
 
-    UserController(UserService userService) {
+    UserController(UserService userService, IdempotencyStore idempotencyStore, UserJsonCache userJsonCache,
+                   HotUserTracker hotUserTracker, UserGetDTOConverter userGetDTOConverter) {
         this.userService = userService;
+        this.idempotencyStore = idempotencyStore;
+        this.userJsonCache = userJsonCache;
+        this.hotUserTracker = hotUserTracker;
+        this.userGetDTOConverter = userGetDTOConverter;
     }
 
+    /**
+     * Without parameters all users are returned. With a status and/or page only
+     * one page of users (ordered by id) is returned, e.g. /users?status=ONLINE&page=0&size=50
+     */
     @GetMapping("/users")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<UserGetDTO> getAllUsers() {
+    public List<UserGetDTO> getAllUsers(@RequestParam(required = false) UserStatus status,
+                                        @RequestParam(required = false) Integer page,
+                                        @RequestParam(defaultValue = "100") int size) {
         // fetch all users in the internal representation
-        List<User> users = userService.getUsers();
-        List<UserGetDTO> userGetDTOs = new ArrayList<>();
+        List<User> users;
+        if (status == null && page == null) {
+            users = userService.getUsers();
+        }
+        else {
+            if ((page != null && page < 0) || size < 1 || size > MAX_PAGE_SIZE) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Error: page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+            }
+            users = userService.getUsers(status, page == null ? 0 : page, size);
+        }
+        // convert each user to the API representation, in parallel for large lists
+        return userGetDTOConverter.convert(users);
+    }
+
+    /**
+     * Users whose birthday falls within the next days (today included), soonest first
+     */
+    @GetMapping("/users/birthdays")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<UserGetDTO> getUpcomingBirthdays(@RequestParam(defaultValue = "7") int days) {
+        if (days < 1 || days > MAX_BIRTHDAY_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Error: days must be between 1 and " + MAX_BIRTHDAY_DAYS);
+        }
+        return userGetDTOConverter.convert(userService.getUpcomingBirthdays(days));
+    }
+
+    /**
+     * Aggregate counters for dashboards, served from memory without touching the database
+     * @param days number of days (up to and including today) to report signups for
+     */
+    @GetMapping("/users/stats")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserStatsDTO getStats(@RequestParam(defaultValue = "30") int days) {
+        return DTOMapper.INSTANCE.convertUserStatsToUserStatsDTO(userService.getStats(days));
+    }
 
-        // convert each user to the API representation
-        for (User user : users) {
-            userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    /**
+     * Incremental feed of user changes. Pass the seq of the last change you have
+     * seen as since; an empty list means you are up to date. 410 GONE means your
+     * since is no longer (or, after a restart, not yet) in the log: re-fetch /users.
+     */
+    @GetMapping("/users/changes")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<UserChangeDTO> getChanges(@RequestParam(defaultValue = "0") long since,
+                                          @RequestParam(defaultValue = "100") int limit) {
+        if (since < 0 || limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: since must be >= 0 and limit >= 1");
         }
-        return userGetDTOs;
+        List<UserChange> changes = userService.getChanges(since, Math.min(limit, MAX_CHANGES_LIMIT));
+        List<UserChangeDTO> changeDTOs = new ArrayList<>(changes.size());
+        for (UserChange change : changes) {
+            changeDTOs.add(DTOMapper.INSTANCE.convertUserChangeToUserChangeDTO(change));
+        }
+        return changeDTOs;
     }
 
     @PostMapping("/users")
     @ResponseStatus(HttpStatus.CREATED)
     @ResponseBody
-    public UserTokenDTO createUser(@RequestBody UserPostDTO userPostDTO) {
-        // convert API user to internal representation
-        User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
-        // create user
-        User createdUser = userService.createUser(userInput);
-        // convert internal representation of user back to API
-        return DTOMapper.INSTANCE.convertUserToUserTokenDTO(createdUser);
+    public UserTokenDTO createUser(@RequestBody UserPostDTO userPostDTO,
+                                   @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                   HttpServletRequest request) {
+        // a retry from the same client with the same key and body gets the original answer replayed
+        byte[] fingerprint = IdempotencyStore.fingerprint(userPostDTO.getUsername(), userPostDTO.getPassword());
+        return idempotencyStore.execute("POST /users " + request.getRemoteAddr(), idempotencyKey, fingerprint, () -> {
+            // convert API user to internal representation
+            User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+            // create user
+            User createdUser = userService.createUser(userInput);
+            // convert internal representation of user back to API
+            return DTOMapper.INSTANCE.convertUserToUserTokenDTO(createdUser);
+        });
     }
 
     /* ORIGINAL
@@ -72,11 +164,30 @@ public class UserController {
     }
     */
 
+    /**
+     * JSON is served from the UserJsonCache; the binary formats are mapped by
+     * getUser below. No produces condition here: with one, a request without an
+     * Accept header, or one that accepts any type, would be mapped to getUser.
+     */
     @GetMapping("/users/{userid}")
+    public ResponseEntity<byte[]> getUserJson(@PathVariable String userid) {
+        Long id = UserService.parseUserId(userid);
+        if (id == null) {
+            throw ExpectedFailure.idNotFound();
+        }
+        byte[] json = userJsonCache.get(id,
+                () -> DTOMapper.INSTANCE.convertEntityToUserGetDTO(userService.getUserById(userid)));
+        // counted here rather than in the UserService, whose lookups are not all reads of a client
+        hotUserTracker.record(id);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+    }
+
+    @GetMapping(value = "/users/{userid}", produces = {MediaType.APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public UserGetDTO getUser(@PathVariable String userid) {
         User user = userService.getUserById(userid);
+        hotUserTracker.record(user.getId());
         return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
     }
 
@@ -88,6 +199,20 @@ public class UserController {
         userService.updateUser(user, userid);
     }
 
+    /**
+     * Soft delete: the user is gone for every endpoint at once, the row is
+     * purged in the background. Users can only delete themselves, with their
+     * token in the Authorization header (optionally as "Bearer <token>").
+     */
+    @DeleteMapping("/users/{userid}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deleteUser(@PathVariable String userid,
+                           @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        String token = authorization != null && authorization.startsWith(BEARER)
+                ? authorization.substring(BEARER.length()) : authorization;
+        userService.deleteUser(userid, token);
+    }
+
     @PostMapping("/users/{userid}/edit")
     @ResponseStatus(HttpStatus.OK)
     public void matchToken(@RequestBody UserTokenDTO userTokenDTO, @PathVariable String userid) {
@@ -97,7 +222,9 @@ public class UserController {
 
     /**
      * Validation Request - takes a UserPostDTO as input from client as it has
-     * password & username attributes; even-though a PostDTO in a GET request is a bit strange
+     * password & username attributes; even-though a PostDTO in a GET request is a bit strange.
+     * Not idempotent on purpose: every login checks the password and sets the
+     * user ONLINE, a replayed answer would hand out a token without either.
      * @param userPostDTO
      */
     @PostMapping("/login")
@@ -116,5 +243,4 @@ public class UserController {
         userService.logout(userTokenDTO.getToken());
     }
 
-
 }
@@ -0,0 +1,63 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * User GetDTO Converter
+ * Maps lists of users to UserGetDTOs for the list endpoints. Small lists are
+ * mapped in a plain loop; from dto-conversion.parallel-threshold users on, the
+ * list is split across the common ForkJoinPool, where each task writes its
+ * range into a pre-sized array, so no merging or resizing is needed. Below the
+ * threshold the cost of splitting and waking the workers outweighs the gain
+ * (UserGetDTOConversionBenchmark prints the crossover per core count).
+ * A threshold of 0 or less disables the parallel path. Pages are capped at
+ * UserController.MAX_PAGE_SIZE users, so with a threshold above that only the
+ * unpaged lists (all users, upcoming birthdays) are mapped in parallel.
+ */
+@Component
+public class UserGetDTOConverter {
+
+  private final int parallelThreshold;
+
+  public UserGetDTOConverter(@Value("${dto-conversion.parallel-threshold:20000}") int parallelThreshold) {
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  /**
+   * @param users a random access list (as returned by the repository), in the order of the result
+   */
+  public List<UserGetDTO> convert(List<User> users) {
+    if (parallelThreshold > 0 && users.size() >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1) {
+      return convertParallel(users);
+    }
+    return convertSequential(users);
+  }
+
+  static List<UserGetDTO> convertSequential(List<User> users) {
+    List<UserGetDTO> userGetDTOs = new ArrayList<>(users.size());
+    for (User user : users) {
+      userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    }
+    return userGetDTOs;
+  }
+
+  /**
+   * runs in the ForkJoinPool of the calling thread, or in the common pool
+   */
+  static List<UserGetDTO> convertParallel(List<User> users) {
+    UserGetDTO[] userGetDTOs = new UserGetDTO[users.size()];
+    IntStream.range(0, userGetDTOs.length).parallel()
+            .forEach(i -> userGetDTOs[i] = DTOMapper.INSTANCE.convertEntityToUserGetDTO(users.get(i)));
+    return Arrays.asList(userGetDTOs);
+  }
+}
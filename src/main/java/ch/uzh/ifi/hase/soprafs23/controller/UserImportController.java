@@ -0,0 +1,77 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserImportReportDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.service.UserImportService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * User Import Controller
+ * Bulk import for migrations, e.g.
+ * curl -H 'X-Admin-Token: ...' -H 'Content-Type: text/csv' --data-binary @users.csv localhost:8080/users/import
+ * The endpoint only exists when import.admin-token is set.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class UserImportController {
+
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final UserImportService userImportService;
+    private final byte[] adminToken;
+
+    UserImportController(UserImportService userImportService, @Value("${import.admin-token:}") String adminToken) {
+        this.userImportService = userImportService;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The body is streamed, not buffered. Rows that could not be imported are
+     * listed in the report; the import itself only fails on a missing CSV header,
+     * or with 409 while another import is running.
+     */
+    @PostMapping(value = "/users/import", consumes = TEXT_CSV_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserImportReportDTO importCsv(@RequestHeader(value = ProfilingController.ADMIN_TOKEN, required = false) String token,
+                                         InputStream body) throws IOException {
+        authorize(token);
+        return DTOMapper.INSTANCE.convertUserImportReportToUserImportReportDTO(
+                userImportService.importUsers(body, UserImportService.Format.CSV));
+    }
+
+    @PostMapping(value = "/users/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public UserImportReportDTO importNdjson(@RequestHeader(value = ProfilingController.ADMIN_TOKEN, required = false) String token,
+                                            InputStream body) throws IOException {
+        authorize(token);
+        return DTOMapper.INSTANCE.convertUserImportReportToUserImportReportDTO(
+                userImportService.importUsers(body, UserImportService.Format.NDJSON));
+    }
+
+    private void authorize(String token) {
+        // without a configured token the endpoint is not exposed at all
+        if (adminToken.length == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        // constant time, so the token cannot be guessed byte by byte
+        if (token == null || !MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Error: Admin token missing or wrong");
+        }
+    }
+}
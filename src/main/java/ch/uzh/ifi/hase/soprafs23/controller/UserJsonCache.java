@@ -0,0 +1,109 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.cluster.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * User JSON Cache
+ * Keeps the serialized UserGetDTO of recently requested users, so GET
+ * /users/{userid} can write the bytes straight to the response without loading
+ * and mapping the user again. Bounded, least recently used entries are dropped.
+ * Entries are invalidated through the UserChangeLog, which sees every user
+ * mutation (update, login, logout, idle sweep, delete) once it is committed.
+ * Each id maps to a version stripe that is bumped on invalidation; a user loaded
+ * while an invalidation happened is returned but not cached, so a concurrent
+ * reader can never put a stale profile back.
+ * With cluster.enabled only the users this node owns are cached; the owner is
+ * told about the changes made on other nodes, and the UserDirectory invalidates
+ * its users here as well, also those a rebalance moves to another node.
+ */
+@Component
+public class UserJsonCache {
+
+  private static final int STRIPES = 1024;
+
+  private final ObjectMapper objectMapper;
+  private final Map<Long, byte[]> entries;
+  private final long[] versions = new long[STRIPES];
+
+  private final UserDirectory userDirectory;
+
+  public UserJsonCache(ObjectMapper objectMapper, UserChangeLog userChangeLog, UserDirectory userDirectory,
+                       @Value("${user-json-cache.max-entries:10000}") int maxEntries) {
+    this.objectMapper = objectMapper;
+    this.userDirectory = userDirectory;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    userChangeLog.addListener(change -> invalidate(change.getUserId()));
+    userDirectory.addInvalidationListener(this::invalidate);
+  }
+
+  /**
+   * @param loader loads the user if it is not cached; its exceptions are passed on and nothing is cached
+   * @return the user as JSON; the array is shared and must not be modified
+   */
+  public byte[] get(Long id, Supplier<UserGetDTO> loader) {
+    if (!userDirectory.owns(id)) {
+      // served here only because its owner could not be reached, nobody would invalidate it
+      return serialize(loader.get());
+    }
+    long version;
+    synchronized (this) {
+      byte[] cached = entries.get(id);
+      if (cached != null) {
+        return cached;
+      }
+      version = versions[stripe(id)];
+    }
+    byte[] json = serialize(loader.get());
+    synchronized (this) {
+      if (versions[stripe(id)] == version) {
+        entries.put(id, json);
+      }
+    }
+    return json;
+  }
+
+  public synchronized void invalidate(Long id) {
+    if (id == null) {
+      return;
+    }
+    versions[stripe(id)]++;
+    entries.remove(id);
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private byte[] serialize(UserGetDTO user) {
+    try {
+      return objectMapper.writeValueAsBytes(user);
+    }
+    catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static int stripe(Long id) {
+    return Long.hashCode(id) & (STRIPES - 1);
+  }
+}
@@ -1,10 +1,14 @@
 package ch.uzh.ifi.hase.soprafs23.entity;
 
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import java.io.Serializable;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.UUID;
 
 /**
  * Internal User Representation
@@ -15,9 +19,24 @@ import java.util.Date;
  * - nullable = false -> this cannot be left empty
  * - unique = true -> this value must be unqiue across the database -> composes
  * the primary key
+ * The token is stored as a 16 byte binary UUID instead of its 36 character
+ * string form, which keeps its unique index small; the API still uses the string.
+ * The status is indexed together with the id, so a page of e.g. the ONLINE
+ * users ordered by id is read from the index without sorting all of them.
+ * birthday_day is derived from the birthday (month * 100 + day, in UTC) and
+ * indexed, so upcoming birthdays are found with a range query.
+ * Deleting a user only sets deleted_at; Hibernate leaves such rows out of every
+ * query and load, and the DeletedUserPurger removes them later. Since every
+ * query filters on deleted_at IS NULL, deleted_at leads the indexes: H2 would
+ * otherwise pick an index on deleted_at alone, which matches every live row,
+ * over the status or birthday index. The purger's range scan uses the prefix.
  */
 @Entity
-@Table(name = "USER")
+@Table(name = "USER", indexes = {
+        @Index(name = "IDX_USER_DELETED_AT_STATUS_ID", columnList = "deleted_at, status, id"),
+        @Index(name = "IDX_USER_DELETED_AT_BIRTHDAY_DAY", columnList = "deleted_at, birthday_day")
+})
+@Where(clause = "deleted_at IS NULL")
 public class User implements Serializable {
 
   private static final long serialVersionUID = 1L;
@@ -32,8 +51,8 @@ public class User implements Serializable {
   @Column(nullable = false, unique = true)
   private String username;
 
-  @Column(nullable = false, unique = true)
-  private String token;
+  @Column(nullable = false, unique = true, length = 16)
+  private UUID token;
 
   @Column(nullable = false)
   private UserStatus status;
@@ -44,6 +63,12 @@ public class User implements Serializable {
   @Column
   private Date birthday;
 
+  @Column(name = "birthday_day")
+  private Integer birthdayDay;
+
+  @Column(name = "deleted_at")
+  private Date deletedAt;
+
   public Long getId() {
     return id;
   }
@@ -68,11 +93,11 @@ public class User implements Serializable {
     this.username = username;
   }
 
-  public String getToken() {
+  public UUID getToken() {
     return token;
   }
 
-  public void setToken(String token) {
+  public void setToken(UUID token) {
     this.token = token;
   }
 
@@ -98,5 +123,29 @@ public class User implements Serializable {
 
   public void setBirthday(Date birthday) {
         this.birthday = birthday;
+        this.birthdayDay = birthdayDayOf(birthday);
     }
+
+  public Integer getBirthdayDay() {
+      return birthdayDay;
+  }
+
+  public Date getDeletedAt() {
+      return deletedAt;
+  }
+
+  public void setDeletedAt(Date deletedAt) {
+      this.deletedAt = deletedAt;
+  }
+
+  /**
+   * @return month * 100 + day of month of the given date in UTC (e.g. 1224 for December 24th), null for null
+   */
+  public static Integer birthdayDayOf(Date date) {
+      if (date == null) {
+          return null;
+      }
+      OffsetDateTime utc = date.toInstant().atOffset(ZoneOffset.UTC);
+      return utc.getMonthValue() * 100 + utc.getDayOfMonth();
+  }
 }
@@ -0,0 +1,79 @@
+package ch.uzh.ifi.hase.soprafs23.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Expected Failure
+ * A ResponseStatusException for ordinary, client-caused outcomes (unknown id,
+ * wrong credentials, taken username). These are signalled on hot paths and
+ * never need a stack trace, so none is captured: creating one is a plain
+ * allocation. A new instance is thrown every time, since a thrown exception
+ * collects suppressed exceptions and a cause from whoever handles it, which
+ * must not leak from one request into the next.
+ * GlobalExceptionAdvice turns them into a response directly instead of going
+ * through the servlet error page.
+ */
+public final class ExpectedFailure extends ResponseStatusException {
+
+  private static final long serialVersionUID = 1L;
+
+  private ExpectedFailure(HttpStatus status, String reason) {
+    // an explicit null cause, so initCause cannot attach one later
+    super(status, reason, null);
+  }
+
+  public static ExpectedFailure idNotFound() {
+    return new ExpectedFailure(HttpStatus.NOT_FOUND, "Error: The requested id does not exist");
+  }
+
+  public static ExpectedFailure userNotFound() {
+    return new ExpectedFailure(HttpStatus.NOT_FOUND, "Error: The requested user does not exist");
+  }
+
+  public static ExpectedFailure logoutUserNotFound() {
+    return new ExpectedFailure(HttpStatus.NOT_FOUND, "The user you tried to log out was not found");
+  }
+
+  public static ExpectedFailure usernameNotFound() {
+    return new ExpectedFailure(HttpStatus.NOT_FOUND, "The given username does not exist");
+  }
+
+  public static ExpectedFailure badCredentials() {
+    return new ExpectedFailure(HttpStatus.UNAUTHORIZED, "Error: Password or username incorrect");
+  }
+
+  public static ExpectedFailure tokenMismatch() {
+    return new ExpectedFailure(HttpStatus.UNAUTHORIZED, "Error: Token mismatch");
+  }
+
+  public static ExpectedFailure usernameTaken() {
+    return new ExpectedFailure(HttpStatus.CONFLICT, "Error: The username you entered is already taken.");
+  }
+
+  /**
+   * no stack trace is ever recorded
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+
+  /**
+   * builds the response body in the same shape as Spring's default error
+   * attributes; only the timestamp and path are computed per request
+   */
+  public Map<String, Object> toResponseBody(String path) {
+    Map<String, Object> body = new LinkedHashMap<>(8);
+    body.put("timestamp", new Date());
+    body.put("status", getStatus().value());
+    body.put("error", getStatus().getReasonPhrase());
+    body.put("message", getReason());
+    body.put("path", path);
+    return body;
+  }
+}
@@ -0,0 +1,100 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection Pool Metrics
+ * Registers itself as the Hikari MetricsTrackerFactory of the application
+ * DataSource and keeps:
+ * - the pool gauges (active, idle, pending threads, total, max)
+ * - a histogram of the time spent waiting for a connection
+ * - a histogram of how long connections are held
+ * - the number of checkouts that timed out
+ * A growing acquire time or pending count means requests queue for
+ * connections; see the pool sizing benchmark for how to pick the size.
+ */
+@Component
+public class ConnectionPoolMetrics implements MetricsTrackerFactory, BeanPostProcessor {
+
+  private final LatencyHistogram acquire = new LatencyHistogram();
+  private final LatencyHistogram usage = new LatencyHistogram();
+  private final LongAdder timeouts = new LongAdder();
+
+  private volatile String poolName;
+  private volatile PoolStats poolStats;
+
+  @Override
+  public Object postProcessBeforeInitialization(Object bean, String beanName) {
+    // has to happen before the pool is started by the first getConnection()
+    if (bean instanceof HikariDataSource && ((HikariDataSource) bean).getMetricsTrackerFactory() == null) {
+      ((HikariDataSource) bean).setMetricsTrackerFactory(this);
+    }
+    return bean;
+  }
+
+  @Override
+  public IMetricsTracker create(String poolName, PoolStats poolStats) {
+    this.poolName = poolName;
+    this.poolStats = poolStats;
+    return new IMetricsTracker() {
+      @Override
+      public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquire.record(TimeUnit.NANOSECONDS.toMicros(elapsedAcquiredNanos));
+      }
+
+      @Override
+      public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usage.record(TimeUnit.MILLISECONDS.toMicros(elapsedBorrowedMillis));
+      }
+
+      @Override
+      public void recordConnectionTimeout() {
+        timeouts.increment();
+      }
+    };
+  }
+
+  public LatencyHistogram getAcquireHistogram() {
+    return acquire;
+  }
+
+  /**
+   * @return the connections currently borrowed, 0 before the pool has started
+   */
+  public int getActiveConnections() {
+    PoolStats stats = poolStats;
+    return stats == null ? 0 : stats.getActiveConnections();
+  }
+
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    PoolStats stats = poolStats;
+    map.put("pool", poolName);
+    // the pool only starts with the first connection request
+    if (stats != null) {
+      map.put("active", stats.getActiveConnections());
+      map.put("idle", stats.getIdleConnections());
+      map.put("pending", stats.getPendingThreads());
+      map.put("total", stats.getTotalConnections());
+      map.put("max", stats.getMaxConnections());
+    }
+    map.put("timeouts", timeouts.sum());
+    map.put("acquire", acquire.toMap());
+    map.put("usage", usage.toMap());
+    return map;
+  }
+}
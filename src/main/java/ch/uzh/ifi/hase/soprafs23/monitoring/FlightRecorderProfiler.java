@@ -0,0 +1,253 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flight Recorder Profiler
+ * Runs at most one Java Flight Recorder session at a time with one of the
+ * JDK's preset settings ("profile" samples execution and allocations at a
+ * rate that is safe under live load). Every recording is capped in size and
+ * duration, stops by itself when the duration is over, and is written to a
+ * temporary file that is replaced by the next recording.
+ * The summary attributes allocation samples and execution samples to the
+ * innermost frame in the application's own packages, so framework and JDK
+ * code is charged to the application method that called it.
+ */
+@Component
+public class FlightRecorderProfiler {
+
+  public static final String APPLICATION_PACKAGE = "ch.uzh.ifi.hase.soprafs23.";
+
+  private static final List<String> SETTINGS = List.of("default", "profile");
+
+  private final Logger log = LoggerFactory.getLogger(FlightRecorderProfiler.class);
+
+  private final Duration maxDuration;
+  private final long maxSizeBytes;
+  private final int topSites;
+
+  private Recording recording;
+  private Path file;
+  private Map<String, Object> summary;
+  private int summarizing;
+
+  public FlightRecorderProfiler(@Value("${profiling.max-duration-seconds:120}") long maxDurationSeconds,
+                                @Value("${profiling.max-size-mb:50}") long maxSizeMb,
+                                @Value("${profiling.top-sites:20}") int topSites) {
+    this.maxDuration = Duration.ofSeconds(Math.max(1, maxDurationSeconds));
+    this.maxSizeBytes = Math.max(1, maxSizeMb) * 1024 * 1024;
+    this.topSites = Math.max(1, topSites);
+  }
+
+  /**
+   * @param settings one of the JDK presets, "default" or "profile"
+   * @param durationSeconds clamped to the configured maximum
+   * @return false if a recording is already running or being summarized
+   */
+  public synchronized boolean start(String settings, long durationSeconds) throws IOException, ParseException {
+    if (!SETTINGS.contains(settings)) {
+      throw new IllegalArgumentException("settings must be one of " + SETTINGS);
+    }
+    if (summarizing > 0 || recording != null && recording.getState() == RecordingState.RUNNING) {
+      return false;
+    }
+    discard();
+
+    Duration duration = Duration.ofSeconds(Math.max(1, durationSeconds));
+    if (duration.compareTo(maxDuration) > 0) {
+      duration = maxDuration;
+    }
+    file = Files.createTempFile("users-", ".jfr");
+    recording = new Recording(Configuration.getConfiguration(settings));
+    recording.setName("users-" + settings);
+    recording.setToDisk(true);
+    recording.setMaxSize(maxSizeBytes);
+    recording.setDuration(duration);
+    // written when the recording is stopped, or when the duration is over
+    recording.setDestination(file);
+    recording.start();
+    log.info("Started {} flight recording for {} s into {}", settings, duration.getSeconds(), file);
+    return true;
+  }
+
+  /**
+   * Stops the current recording (if it has not stopped by itself yet) and
+   * summarizes it. The summary is kept until the next start. Parsing a
+   * recording of up to the maximum size takes a while, so it runs outside
+   * the monitor; status() is not blocked and start() refuses until it is done.
+   * @return null if there is no recording
+   */
+  public Map<String, Object> stop() throws IOException {
+    Path stoppedFile;
+    synchronized (this) {
+      if (recording == null) {
+        return null;
+      }
+      if (recording.getState() == RecordingState.RUNNING) {
+        recording.stop();
+      }
+      if (summary != null) {
+        return summary;
+      }
+      stoppedFile = file;
+      summarizing++;
+    }
+
+    Map<String, Object> stoppedSummary;
+    try {
+      stoppedSummary = summarize(stoppedFile, topSites);
+    }
+    finally {
+      synchronized (this) {
+        summarizing--;
+      }
+    }
+
+    synchronized (this) {
+      if (stoppedFile.equals(file) && summary == null) {
+        summary = stoppedSummary;
+        log.info("Stopped flight recording {} ({} bytes)", file, Files.size(file));
+      }
+      // a concurrent stop of the same recording may have stored its summary first
+      return stoppedFile.equals(file) ? summary : stoppedSummary;
+    }
+  }
+
+  public synchronized Map<String, Object> status() {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("state", recording == null ? "NONE" : recording.getState().name());
+    if (recording != null) {
+      status.put("name", recording.getName());
+      status.put("startTime", recording.getStartTime());
+      status.put("duration", recording.getDuration());
+      status.put("maxSizeBytes", recording.getMaxSize());
+    }
+    return status;
+  }
+
+  /**
+   * @return the file of a finished recording, for download into JDK Mission Control
+   */
+  public synchronized Path recordingFile() {
+    if (recording == null || recording.getState() == RecordingState.RUNNING || !Files.exists(file)) {
+      return null;
+    }
+    return file;
+  }
+
+  @PreDestroy
+  public synchronized void discard() {
+    if (recording != null) {
+      recording.close();
+      recording = null;
+    }
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      }
+      catch (IOException e) {
+        log.warn("Could not delete {}", file, e);
+      }
+      file = null;
+    }
+    summary = null;
+  }
+
+  /**
+   * Streams the events of a recording (the file is never loaded as a whole)
+   * and keeps the heaviest application allocation sites and hot methods.
+   */
+  static Map<String, Object> summarize(Path recordingFile, int topSites) throws IOException {
+    Map<String, long[]> allocations = new HashMap<>();
+    Map<String, long[]> executions = new HashMap<>();
+    long allocationSamples = 0;
+    long executionSamples = 0;
+    Instant first = null;
+    Instant last = null;
+
+    try (RecordingFile events = new RecordingFile(recordingFile)) {
+      while (events.hasMoreEvents()) {
+        RecordedEvent event = events.readEvent();
+        String type = event.getEventType().getName();
+        if (first == null || event.getStartTime().isBefore(first)) {
+          first = event.getStartTime();
+        }
+        if (last == null || event.getEndTime().isAfter(last)) {
+          last = event.getEndTime();
+        }
+        if ("jdk.ExecutionSample".equals(type)) {
+          executionSamples++;
+          charge(executions, event.getStackTrace(), 1);
+        }
+        else if ("jdk.ObjectAllocationSample".equals(type)) {
+          allocationSamples++;
+          charge(allocations, event.getStackTrace(), event.getLong("weight"));
+        }
+      }
+    }
+
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("start", first);
+    summary.put("end", last);
+    summary.put("executionSamples", executionSamples);
+    summary.put("allocationSamples", allocationSamples);
+    summary.put("hotMethods", top(executions, topSites, "samples"));
+    summary.put("allocationSites", top(allocations, topSites, "bytes"));
+    return summary;
+  }
+
+  private static void charge(Map<String, long[]> sites, RecordedStackTrace stackTrace, long amount) {
+    if (stackTrace == null) {
+      return;
+    }
+    // frames are innermost first
+    for (RecordedFrame frame : stackTrace.getFrames()) {
+      if (!frame.isJavaFrame()) {
+        continue;
+      }
+      String typeName = frame.getMethod().getType().getName();
+      if (typeName.startsWith(APPLICATION_PACKAGE)) {
+        String site = typeName.substring(APPLICATION_PACKAGE.length()) + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+        sites.computeIfAbsent(site, key -> new long[1])[0] += amount;
+        return;
+      }
+    }
+  }
+
+  private static List<Map<String, Object>> top(Map<String, long[]> sites, int limit, String unit) {
+    List<Map.Entry<String, long[]>> entries = new ArrayList<>(sites.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+    List<Map<String, Object>> top = new ArrayList<>(Math.min(limit, entries.size()));
+    for (Map.Entry<String, long[]> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+      Map<String, Object> site = new LinkedHashMap<>(4);
+      site.put("site", entry.getKey());
+      site.put(unit, entry.getValue()[0]);
+      top.add(site);
+    }
+    return top;
+  }
+}
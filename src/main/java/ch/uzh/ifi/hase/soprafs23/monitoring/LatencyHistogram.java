@@ -0,0 +1,91 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency Histogram
+ * Fixed buckets (upper bounds in microseconds) counted with LongAdders, so
+ * recording is lock-free and cheap enough for every connection checkout.
+ * Values above the last bound land in the overflow bucket.
+ */
+public final class LatencyHistogram {
+
+  static final long[] BOUNDS_MICROS = {
+    50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+  };
+
+  private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+  private final LongAdder sumMicros = new LongAdder();
+
+  public LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long micros) {
+    int i = 0;
+    while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) {
+      i++;
+    }
+    buckets[i].increment();
+    sumMicros.add(micros);
+  }
+
+  public long count() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * @return the upper bound in microseconds below which at least the given
+   * fraction of the values lies, Long.MAX_VALUE if it is in the overflow bucket
+   */
+  public long percentileMicros(double fraction) {
+    long[] counts = counts();
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+    long target = (long) Math.ceil(total * fraction);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= target && seen > 0) {
+        return i < BOUNDS_MICROS.length ? BOUNDS_MICROS[i] : Long.MAX_VALUE;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return count, sum and the non cumulative bucket counts keyed by "le_<micros>" (last one "le_inf")
+   */
+  public Map<String, Object> toMap() {
+    long[] counts = counts();
+    Map<String, Long> bucketMap = new LinkedHashMap<>();
+    long total = 0;
+    for (int i = 0; i < counts.length; i++) {
+      bucketMap.put(i < BOUNDS_MICROS.length ? "le_" + BOUNDS_MICROS[i] : "le_inf", counts[i]);
+      total += counts[i];
+    }
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("count", total);
+    map.put("sumMicros", sumMicros.sum());
+    map.put("bucketsMicros", bucketMap);
+    return map;
+  }
+
+  private long[] counts() {
+    long[] counts = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,135 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+/**
+ * Request Timings
+ * Per request, per stage time accumulator, bound to the request thread by the
+ * ServerTimingFilter. Stages are measured exclusively: the time a service
+ * method spends in repository calls is counted as db, not as service, so the
+ * stages add up to the total.
+ * Not thread safe; it is only ever used by the thread serving the request.
+ */
+public final class RequestTimings {
+
+  public enum Stage {
+    BIND("bind", "JSON request binding"),
+    CONTROLLER("controller", "controller incl. DTOMapper"),
+    SERVICE("service", "UserService"),
+    DB("db", "repository queries"),
+    FLUSH("flush", "repository flush"),
+    WRITE("write", "response serialization");
+
+    final String metric;
+    final String description;
+
+    Stage(String metric, String description) {
+      this.metric = metric;
+      this.description = description;
+    }
+  }
+
+  private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+  private final long startNanos = System.nanoTime();
+  private final long[] nanos = new long[Stage.values().length];
+  private final int[] calls = new int[Stage.values().length];
+  private long childNanos;
+  private long writeStartNanos;
+  private boolean headerWritten;
+
+  /**
+   * @return the timings of the request served by this thread, null if timing is disabled
+   */
+  public static RequestTimings current() {
+    return CURRENT.get();
+  }
+
+  static RequestTimings begin() {
+    RequestTimings timings = new RequestTimings();
+    CURRENT.set(timings);
+    return timings;
+  }
+
+  static void end() {
+    CURRENT.remove();
+  }
+
+  /**
+   * starts a nested measurement; returns the state to hand back to {@link #exit}
+   */
+  long enter() {
+    long outerChildNanos = childNanos;
+    childNanos = 0;
+    return outerChildNanos;
+  }
+
+  /**
+   * ends a nested measurement and records its exclusive time
+   */
+  void exit(Stage stage, long elapsedNanos, long outerChildNanos) {
+    nanos[stage.ordinal()] += elapsedNanos - childNanos;
+    calls[stage.ordinal()]++;
+    childNanos = outerChildNanos + elapsedNanos;
+  }
+
+  void add(Stage stage, long elapsedNanos) {
+    nanos[stage.ordinal()] += elapsedNanos;
+    calls[stage.ordinal()]++;
+  }
+
+  void markWriteStart() {
+    writeStartNanos = System.nanoTime();
+  }
+
+  void markWriteEnd() {
+    if (writeStartNanos != 0) {
+      add(Stage.WRITE, System.nanoTime() - writeStartNanos);
+      writeStartNanos = 0;
+    }
+  }
+
+  boolean isHeaderWritten() {
+    return headerWritten;
+  }
+
+  void setHeaderWritten() {
+    headerWritten = true;
+  }
+
+  long totalNanos() {
+    return System.nanoTime() - startNanos;
+  }
+
+  /**
+   * @return the stages measured so far as a Server-Timing header value
+   */
+  String toHeaderValue() {
+    StringBuilder header = new StringBuilder(160);
+    for (Stage stage : Stage.values()) {
+      if (calls[stage.ordinal()] > 0) {
+        header.append(stage.metric).append(";dur=").append(millis(nanos[stage.ordinal()]))
+                .append(";desc=\"").append(stage.description).append("\", ");
+      }
+    }
+    return header.append("total;dur=").append(millis(totalNanos())).toString();
+  }
+
+  /**
+   * @return all stages as key=value pairs for a structured log line
+   */
+  String toLogFields() {
+    StringBuilder fields = new StringBuilder(160);
+    fields.append("total_ms=").append(millis(totalNanos()));
+    for (Stage stage : Stage.values()) {
+      fields.append(' ').append(stage.metric).append("_ms=").append(millis(nanos[stage.ordinal()]))
+              .append(' ').append(stage.metric).append("_calls=").append(calls[stage.ordinal()]);
+    }
+    return fields.toString();
+  }
+
+  private static String millis(long nanos) {
+    // two decimals without going through String.format
+    long hundredths = nanos / 10_000;
+    long fraction = hundredths % 100;
+    return (hundredths / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+  }
+}
@@ -0,0 +1,49 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Attributes the time of controller, UserService and repository calls to
+ * their stage of the current RequestTimings.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "timing.enabled", havingValue = "true")
+public class ServerTimingAspect {
+
+  @Around("within(ch.uzh.ifi.hase.soprafs23.controller..*)")
+  public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, RequestTimings.Stage.CONTROLLER);
+  }
+
+  @Around("within(ch.uzh.ifi.hase.soprafs23.service.UserService)")
+  public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+    return time(joinPoint, RequestTimings.Stage.SERVICE);
+  }
+
+  @Around("this(ch.uzh.ifi.hase.soprafs23.repository.UserRepository)")
+  public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+    boolean flush = "flush".equals(joinPoint.getSignature().getName());
+    return time(joinPoint, flush ? RequestTimings.Stage.FLUSH : RequestTimings.Stage.DB);
+  }
+
+  private Object time(ProceedingJoinPoint joinPoint, RequestTimings.Stage stage) throws Throwable {
+    RequestTimings timings = RequestTimings.current();
+    if (timings == null) {
+      // not part of a request, e.g. a scheduled job
+      return joinPoint.proceed();
+    }
+    long outer = timings.enter();
+    long start = System.nanoTime();
+    try {
+      return joinPoint.proceed();
+    }
+    finally {
+      timings.exit(stage, System.nanoTime() - start, outer);
+    }
+  }
+}
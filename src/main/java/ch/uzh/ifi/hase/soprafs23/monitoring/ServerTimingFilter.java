@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server Timing Filter
+ * Binds a RequestTimings to every request, adds the Server-Timing response
+ * header and logs a structured line for requests slower than
+ * timing.log-threshold-ms. Only registered when timing.enabled=true; when
+ * disabled none of the timing beans exist, so there is no overhead at all.
+ */
+@Component
+@ConditionalOnProperty(name = "timing.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+  static final String HEADER = "Server-Timing";
+
+  private final Logger log = LoggerFactory.getLogger(ServerTimingFilter.class);
+
+  private final long thresholdNanos;
+
+  public ServerTimingFilter(@Value("${timing.log-threshold-ms:500}") long thresholdMillis) {
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+          throws ServletException, IOException {
+    RequestTimings timings = RequestTimings.begin();
+    try {
+      chain.doFilter(request, response);
+    }
+    finally {
+      timings.markWriteEnd();
+      // responses with a body got the header in ServerTimingResponseAdvice already
+      if (!timings.isHeaderWritten() && !response.isCommitted()) {
+        response.addHeader(HEADER, timings.toHeaderValue());
+      }
+      if (timings.totalNanos() >= thresholdNanos) {
+        log.info("slow_request method={} uri={} status={} {}", request.getMethod(), request.getRequestURI(),
+                response.getStatus(), timings.toLogFields());
+      }
+      RequestTimings.end();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Measures the JSON binding of @RequestBody arguments.
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "timing.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ServerTimingRequestAdvice extends RequestBodyAdviceAdapter {
+
+  private static final ThreadLocal<Long> READ_START = new ThreadLocal<>();
+
+  @Override
+  public boolean supports(MethodParameter methodParameter, Type targetType,
+                          Class<? extends HttpMessageConverter<?>> converterType) {
+    return RequestTimings.current() != null;
+  }
+
+  @Override
+  public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                         Class<? extends HttpMessageConverter<?>> converterType) throws IOException {
+    READ_START.set(System.nanoTime());
+    return inputMessage;
+  }
+
+  @Override
+  public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                              Class<? extends HttpMessageConverter<?>> converterType) {
+    Long start = READ_START.get();
+    RequestTimings timings = RequestTimings.current();
+    if (start != null && timings != null) {
+      timings.add(RequestTimings.Stage.BIND, System.nanoTime() - start);
+    }
+    READ_START.remove();
+    return body;
+  }
+}
@@ -0,0 +1,41 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds the Server-Timing header right before a response body is written; after
+ * that the response is committed and headers can no longer be set. The time
+ * spent serializing the body is measured from here until the filter regains
+ * control and only appears in the log line.
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "timing.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ServerTimingResponseAdvice implements ResponseBodyAdvice<Object> {
+
+  @Override
+  public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+    return RequestTimings.current() != null;
+  }
+
+  @Override
+  public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                ServerHttpRequest request, ServerHttpResponse response) {
+    RequestTimings timings = RequestTimings.current();
+    if (timings != null) {
+      response.getHeaders().add(ServerTimingFilter.HEADER, timings.toHeaderValue());
+      timings.setHeaderWritten();
+      timings.markWriteStart();
+    }
+    return body;
+  }
+}
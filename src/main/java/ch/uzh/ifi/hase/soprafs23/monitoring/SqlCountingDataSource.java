@@ -0,0 +1,139 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQL Counting DataSource
+ * Wraps the pool so that every executed statement, every row read from a
+ * result set and the execution time are recorded in the SqlStatistics of the
+ * current thread. If no statistics are bound to the thread the proxies only
+ * delegate.
+ * Extends DelegatingDataSource so the pool underneath can still be unwrapped
+ * (e.g. for the Hikari metrics).
+ */
+public class SqlCountingDataSource extends DelegatingDataSource {
+
+  public SqlCountingDataSource(DataSource targetDataSource) {
+    super(targetDataSource);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    Connection connection = super.getConnection();
+    return proxy(Connection.class, connection, new ConnectionHandler(connection));
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    Connection connection = super.getConnection(username, password);
+    return proxy(Connection.class, connection, new ConnectionHandler(connection));
+  }
+
+  private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(SqlCountingDataSource.class.getClassLoader(), new Class<?>[] {type},
+            handler));
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    }
+    catch (InvocationTargetException e) {
+      throw e.getTargetException();
+    }
+  }
+
+  private static final class ConnectionHandler implements InvocationHandler {
+    private final Connection connection;
+
+    ConnectionHandler(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = SqlCountingDataSource.invoke(connection, method, args);
+      if (result instanceof CallableStatement) {
+        return proxy(CallableStatement.class, (CallableStatement) result, new StatementHandler((Statement) result));
+      }
+      if (result instanceof PreparedStatement) {
+        return proxy(PreparedStatement.class, (PreparedStatement) result, new StatementHandler((Statement) result));
+      }
+      if (result instanceof Statement) {
+        return proxy(Statement.class, (Statement) result, new StatementHandler((Statement) result));
+      }
+      return result;
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+    private final Statement statement;
+
+    StatementHandler(Statement statement) {
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      SqlStatistics statistics = SqlStatistics.current();
+      String name = method.getName();
+      if (statistics == null) {
+        return SqlCountingDataSource.invoke(statement, method, args);
+      }
+      if (name.startsWith("execute")) {
+        long start = System.nanoTime();
+        Object result = SqlCountingDataSource.invoke(statement, method, args);
+        statistics.statementExecuted(System.nanoTime() - start, affectedRows(result));
+        return result instanceof ResultSet ? countRows((ResultSet) result) : result;
+      }
+      if ("getResultSet".equals(name)) {
+        Object result = SqlCountingDataSource.invoke(statement, method, args);
+        return result == null ? null : countRows((ResultSet) result);
+      }
+      return SqlCountingDataSource.invoke(statement, method, args);
+    }
+
+    private static long affectedRows(Object result) {
+      if (result instanceof Integer || result instanceof Long) {
+        return ((Number) result).longValue();
+      }
+      long rows = 0;
+      if (result instanceof int[]) {
+        for (int count : (int[]) result) {
+          rows += Math.max(0, count);
+        }
+      }
+      else if (result instanceof long[]) {
+        for (long count : (long[]) result) {
+          rows += Math.max(0, count);
+        }
+      }
+      return rows;
+    }
+
+    private static ResultSet countRows(ResultSet resultSet) {
+      return proxy(ResultSet.class, resultSet, (proxy, method, args) -> {
+        Object result = SqlCountingDataSource.invoke(resultSet, method, args);
+        if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+          SqlStatistics statistics = SqlStatistics.current();
+          if (statistics != null) {
+            statistics.rowRead();
+          }
+        }
+        return result;
+      });
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * SQL Counting DataSource Post Processor
+ * Wraps every DataSource bean in a SqlCountingDataSource when
+ * sql-stats.enabled=true.
+ */
+@Component
+@ConditionalOnProperty(name = "sql-stats.enabled", havingValue = "true")
+public class SqlCountingDataSourcePostProcessor implements BeanPostProcessor {
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (bean instanceof DataSource && !(bean instanceof SqlCountingDataSource)) {
+      return new SqlCountingDataSource((DataSource) bean);
+    }
+    return bean;
+  }
+}
@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+/**
+ * SQL Statistics
+ * Counts the JDBC statements, the rows they returned or changed and the time
+ * spent executing them, for the request (or test) bound to the current thread.
+ * Filled by the SqlCountingDataSource.
+ * Tests can pin the number of queries of an endpoint:
+ * <pre>
+ *   SqlStatistics stats = SqlStatistics.begin();
+ *   mockMvc.perform(get("/users/1"));
+ *   assertEquals(1, stats.getStatements());
+ *   SqlStatistics.end();
+ * </pre>
+ */
+public final class SqlStatistics {
+
+  private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+
+  private int statements;
+  private long rows;
+  private long nanos;
+
+  /**
+   * @return the statistics bound to this thread, null if nothing is being counted
+   */
+  public static SqlStatistics current() {
+    return CURRENT.get();
+  }
+
+  public static SqlStatistics begin() {
+    SqlStatistics statistics = new SqlStatistics();
+    CURRENT.set(statistics);
+    return statistics;
+  }
+
+  public static void end() {
+    CURRENT.remove();
+  }
+
+  void statementExecuted(long elapsedNanos, long affectedRows) {
+    statements++;
+    nanos += elapsedNanos;
+    if (affectedRows > 0) {
+      rows += affectedRows;
+    }
+  }
+
+  void rowRead() {
+    rows++;
+  }
+
+  public int getStatements() {
+    return statements;
+  }
+
+  public long getRows() {
+    return rows;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+}
@@ -0,0 +1,57 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * SQL Statistics Filter
+ * Counts the statements, rows and database time of every request and logs a
+ * warning for requests issuing more than sql-stats.statement-budget
+ * statements, which usually points at an N+1 pattern or a redundant query.
+ * Only registered when sql-stats.enabled=true.
+ */
+@Component
+@ConditionalOnProperty(name = "sql-stats.enabled", havingValue = "true")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+
+  private final Logger log = LoggerFactory.getLogger(SqlStatisticsFilter.class);
+
+  private final int statementBudget;
+
+  public SqlStatisticsFilter(@Value("${sql-stats.statement-budget:10}") int statementBudget) {
+    this.statementBudget = statementBudget;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+          throws ServletException, IOException {
+    // a test may have bound statistics already to assert on them afterwards
+    boolean owner = SqlStatistics.current() == null;
+    SqlStatistics statistics = owner ? SqlStatistics.begin() : SqlStatistics.current();
+    try {
+      chain.doFilter(request, response);
+    }
+    finally {
+      if (statistics.getStatements() > statementBudget) {
+        log.warn("sql_budget_exceeded method={} uri={} statements={} budget={} rows={} db_ms={}",
+                request.getMethod(), request.getRequestURI(), statistics.getStatements(), statementBudget,
+                statistics.getRows(), statistics.getNanos() / 1_000_000);
+      }
+      if (owner) {
+        SqlStatistics.end();
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Startup Timing Report
+ * Once the application is ready, logs how long the JVM took to get there and
+ * where the time went: the top level startup phases in order and the slowest
+ * bean instantiations. Needs the BufferingApplicationStartup installed by
+ * Application.main and startup.report.enabled=true (set in the fast profile).
+ * With startup.exit-after-ready=true the application exits right after the
+ * report, which is used by the appCdsArchive training run.
+ */
+@Component
+public class StartupTimingReport implements ApplicationListener<ApplicationReadyEvent> {
+
+  private static final int SLOWEST_BEANS = 10;
+
+  private final Logger log = LoggerFactory.getLogger(StartupTimingReport.class);
+
+  private final boolean enabled;
+  private final boolean exitAfterReady;
+
+  public StartupTimingReport(@Value("${startup.report.enabled:false}") boolean enabled,
+                             @Value("${startup.exit-after-ready:false}") boolean exitAfterReady) {
+    this.enabled = enabled;
+    this.exitAfterReady = exitAfterReady;
+  }
+
+  @Override
+  public void onApplicationEvent(ApplicationReadyEvent event) {
+    long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    SpringApplication application = event.getSpringApplication();
+    if (application.getApplicationStartup() instanceof BufferingApplicationStartup) {
+      // drained in any case, the steps are not needed after startup
+      StartupTimeline timeline = ((BufferingApplicationStartup) application.getApplicationStartup())
+              .drainBufferedTimeline();
+      if (enabled) {
+        log.info(toReport(timeline, uptimeMillis));
+      }
+    }
+    else if (enabled) {
+      log.info("startup_report jvm_uptime_ms={} (no startup steps recorded)", uptimeMillis);
+    }
+    if (exitAfterReady) {
+      System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+  }
+
+  static String toReport(StartupTimeline timeline, long uptimeMillis) {
+    StringBuilder report = new StringBuilder("startup_report jvm_uptime_ms=").append(uptimeMillis);
+    List<StartupTimeline.TimelineEvent> beans = new ArrayList<>();
+    for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+      StartupStep step = event.getStartupStep();
+      if (step.getParentId() == null) {
+        report.append("\n  ").append(step.getName()).append(' ').append(event.getDuration().toMillis()).append(" ms");
+      }
+      else if ("spring.beans.instantiate".equals(step.getName())) {
+        beans.add(event);
+      }
+    }
+    beans.sort(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed());
+    report.append("\n  slowest beans (including their dependencies):");
+    for (StartupTimeline.TimelineEvent bean : beans.subList(0, Math.min(SLOWEST_BEANS, beans.size()))) {
+      report.append("\n    ").append(beanName(bean.getStartupStep())).append(' ')
+              .append(bean.getDuration().toMillis()).append(" ms");
+    }
+    return report.toString();
+  }
+
+  private static String beanName(StartupStep step) {
+    for (StartupStep.Tag tag : step.getTags()) {
+      if ("beanName".equals(tag.getKey())) {
+        return tag.getValue();
+      }
+    }
+    return step.getName();
+  }
+}
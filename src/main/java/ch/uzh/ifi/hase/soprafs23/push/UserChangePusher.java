@@ -0,0 +1,126 @@
+package ch.uzh.ifi.hase.soprafs23.push;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * User Change Pusher
+ * Pushes the current UserGetDTO to /topic/users/{userid} when the user is
+ * changed (update, login, logout, idle sweep), as seen by the UserChangeLog.
+ * Changes are coalesced: a change only marks the user dirty, and every
+ * push.coalesce-ms the dirty users are loaded with one query and sent once,
+ * no matter how often they changed in between. Users nobody subscribed to are
+ * never marked, so changes cost nothing without subscribers.
+ * Off with cluster.enabled, like the WebSocketConfiguration.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "false", matchIfMissing = true)
+public class UserChangePusher {
+
+  static final String TOPIC_ROOT = "/topic";
+  static final String TOPIC_PREFIX = TOPIC_ROOT + "/users/";
+
+  private final SimpMessageSendingOperations messagingTemplate;
+  private final UserRepository userRepository;
+
+  private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+  // subscriptions per user id, and per session (subscription id -> user id) to clean up on disconnect
+  private final Map<Long, Integer> subscribers = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, Long>> sessions = new ConcurrentHashMap<>();
+
+  public UserChangePusher(SimpMessageSendingOperations messagingTemplate,
+                          @Qualifier("userRepository") UserRepository userRepository,
+                          UserChangeLog userChangeLog) {
+    this.messagingTemplate = messagingTemplate;
+    this.userRepository = userRepository;
+    userChangeLog.addListener(change -> {
+      Long id = change.getUserId();
+      if (id != null && subscribers.containsKey(id)) {
+        dirty.add(id);
+      }
+    });
+  }
+
+  @EventListener
+  public void onSubscribe(SessionSubscribeEvent event) {
+    StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+    Long userId = userIdOf(accessor.getDestination());
+    if (userId == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+      return;
+    }
+    sessions.computeIfAbsent(accessor.getSessionId(), session -> new ConcurrentHashMap<>())
+            .put(accessor.getSubscriptionId(), userId);
+    subscribers.merge(userId, 1, Integer::sum);
+  }
+
+  @EventListener
+  public void onUnsubscribe(SessionUnsubscribeEvent event) {
+    StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+    Map<String, Long> subscriptions = accessor.getSessionId() == null ? null : sessions.get(accessor.getSessionId());
+    if (subscriptions != null && accessor.getSubscriptionId() != null) {
+      release(subscriptions.remove(accessor.getSubscriptionId()));
+    }
+  }
+
+  @EventListener
+  public void onDisconnect(SessionDisconnectEvent event) {
+    Map<String, Long> subscriptions = sessions.remove(event.getSessionId());
+    if (subscriptions != null) {
+      subscriptions.values().forEach(this::release);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${push.coalesce-ms:200}")
+  public void flush() {
+    if (dirty.isEmpty()) {
+      return;
+    }
+    List<Long> ids = new ArrayList<>();
+    for (Iterator<Long> it = dirty.iterator(); it.hasNext(); ) {
+      ids.add(it.next());
+      it.remove();
+    }
+    for (User user : userRepository.findAllById(ids)) {
+      messagingTemplate.convertAndSend(TOPIC_PREFIX + user.getId(), DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    }
+  }
+
+  int subscriberCount(Long userId) {
+    return subscribers.getOrDefault(userId, 0);
+  }
+
+  private void release(Long userId) {
+    if (userId != null) {
+      subscribers.computeIfPresent(userId, (id, count) -> count == 1 ? null : count - 1);
+    }
+  }
+
+  static Long userIdOf(String destination) {
+    if (destination == null || !destination.startsWith(TOPIC_PREFIX)) {
+      return null;
+    }
+    return UserService.parseUserId(destination.substring(TOPIC_PREFIX.length()));
+  }
+}
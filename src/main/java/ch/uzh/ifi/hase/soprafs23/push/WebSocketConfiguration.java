@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs23.push;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+/**
+ * WebSocket Configuration
+ * STOMP over WebSocket at /ws with an in-memory broker. Clients subscribe to
+ * /topic/users/{userid} and receive the UserGetDTO whenever that user changes
+ * (see UserChangePusher).
+ * The limits below keep one slow client from holding on to memory or to the
+ * outbound threads, so a node can keep thousands of idle sessions open.
+ * Off with cluster.enabled, a node only sees the changes made on it.
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "false", matchIfMissing = true)
+public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer {
+
+  private static final long HEARTBEAT_MILLIS = 25_000;
+
+  private TaskScheduler messageBrokerTaskScheduler;
+
+  @Autowired
+  public void setMessageBrokerTaskScheduler(@Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler scheduler) {
+    this.messageBrokerTaskScheduler = scheduler;
+  }
+
+  @Override
+  public void registerStompEndpoints(StompEndpointRegistry registry) {
+    registry.addEndpoint("/ws").setAllowedOriginPatterns("*");
+  }
+
+  @Override
+  public void configureMessageBroker(MessageBrokerRegistry registry) {
+    // heartbeats let the broker drop sessions of clients that vanished without closing
+    registry.enableSimpleBroker(UserChangePusher.TOPIC_ROOT)
+            .setHeartbeatValue(new long[] {HEARTBEAT_MILLIS, HEARTBEAT_MILLIS})
+            .setTaskScheduler(messageBrokerTaskScheduler);
+    registry.setApplicationDestinationPrefixes("/app");
+  }
+
+  @Override
+  public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+    registration.setMessageSizeLimit(16 * 1024)
+            .setSendBufferSizeLimit(256 * 1024)
+            .setSendTimeLimit(10_000);
+  }
+}
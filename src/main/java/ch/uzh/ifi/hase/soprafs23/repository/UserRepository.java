@@ -1,12 +1,93 @@
 package ch.uzh.ifi.hase.soprafs23.repository;
 
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Soft deleted users (deleted_at set) are excluded from all queries and loads
+ * by the @Where of the User entity. Bulk updates are not covered by it and
+ * have to exclude them themselves.
+ */
 @Repository("userRepository")
 public interface UserRepository extends JpaRepository<User, Long> {
   User findByUsername(String username);
 
-  User findByToken(String token);
+  User findByToken(UUID token);
+
+  List<User> findByStatus(UserStatus status, Pageable pageable);
+
+  /**
+   * a page of all users; unlike findAll(Pageable) without the count query of a Page
+   */
+  List<User> findAllBy(Pageable pageable);
+
+  /**
+   * keyset paging: the next page after the given id, a range scan of the
+   * primary key however deep the page is
+   */
+  List<User> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+  /**
+   * range query on the indexed birthday_day column (month * 100 + day)
+   */
+  List<User> findByBirthdayDayBetweenOrderByBirthdayDayAscIdAsc(Integer from, Integer to);
+
+  @Query("SELECT u.id FROM User u WHERE u.status = :status")
+  List<Long> findIdsByStatus(@Param("status") UserStatus status);
+
+  /**
+   * sets the status of all given users in a single UPDATE statement
+   * @return the number of rows that changed
+   */
+  @Modifying(clearAutomatically = true)
+  @Transactional
+  @Query("UPDATE User u SET u.status = :status WHERE u.id IN :ids AND u.status <> :status AND u.deletedAt IS NULL")
+  int updateStatusByIdIn(@Param("status") UserStatus status, @Param("ids") Collection<Long> ids);
+
+  /**
+   * loads the user and locks its row until the transaction ends, so its
+   * status and dates cannot change underneath the caller
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT u FROM User u WHERE u.id = :id")
+  Optional<User> findByIdForUpdate(@Param("id") Long id);
+
+  /**
+   * like findByUsername, but locks the row until the transaction ends
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT u FROM User u WHERE u.username = :username")
+  User findByUsernameForUpdate(@Param("username") String username);
+
+  /**
+   * loads those of the given users that have the status and locks their rows
+   * until the transaction ends
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT u FROM User u WHERE u.id IN :ids AND u.status = :status")
+  List<User> findByIdInAndStatusForUpdate(@Param("ids") Collection<Long> ids, @Param("status") UserStatus status);
+
+  /**
+   * marks the user deleted unless it already is
+   * @return 1 if this call deleted the user, 0 if it was deleted already
+   */
+  @Modifying(clearAutomatically = true)
+  @Transactional
+  @Query("UPDATE User u SET u.deletedAt = :deletedAt WHERE u.id = :id AND u.deletedAt IS NULL")
+  int softDeleteById(@Param("id") Long id, @Param("deletedAt") Date deletedAt);
 }
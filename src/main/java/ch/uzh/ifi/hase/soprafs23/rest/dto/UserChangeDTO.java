@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+
+import java.util.Date;
+
+public class UserChangeDTO {
+
+  private Long seq;
+  private UserChangeType type;
+  private Long userId;
+  private Date timestamp;
+
+  public Long getSeq() {
+    return seq;
+  }
+
+  public void setSeq(Long seq) {
+    this.seq = seq;
+  }
+
+  public UserChangeType getType() {
+    return type;
+  }
+
+  public void setType(UserChangeType type) {
+    this.type = type;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public void setUserId(Long userId) {
+    this.userId = userId;
+  }
+
+  public Date getTimestamp() {
+    return timestamp;
+  }
+
+  public void setTimestamp(Date timestamp) {
+    this.timestamp = timestamp;
+  }
+}
@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+public class UserImportErrorDTO {
+
+  private Long line;
+  private String message;
+
+  public Long getLine() {
+    return line;
+  }
+
+  public void setLine(Long line) {
+    this.line = line;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+}
@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import java.util.List;
+
+public class UserImportReportDTO {
+
+  private Long rowsRead;
+  private Long imported;
+  private Long failed;
+  private List<UserImportErrorDTO> errors;
+  private Boolean errorsTruncated;
+  private Long elapsedMillis;
+  private Long rowsPerSecond;
+
+  public Long getRowsRead() {
+    return rowsRead;
+  }
+
+  public void setRowsRead(Long rowsRead) {
+    this.rowsRead = rowsRead;
+  }
+
+  public Long getImported() {
+    return imported;
+  }
+
+  public void setImported(Long imported) {
+    this.imported = imported;
+  }
+
+  public Long getFailed() {
+    return failed;
+  }
+
+  public void setFailed(Long failed) {
+    this.failed = failed;
+  }
+
+  public List<UserImportErrorDTO> getErrors() {
+    return errors;
+  }
+
+  public void setErrors(List<UserImportErrorDTO> errors) {
+    this.errors = errors;
+  }
+
+  public Boolean getErrorsTruncated() {
+    return errorsTruncated;
+  }
+
+  public void setErrorsTruncated(Boolean errorsTruncated) {
+    this.errorsTruncated = errorsTruncated;
+  }
+
+  public Long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public void setElapsedMillis(Long elapsedMillis) {
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public Long getRowsPerSecond() {
+    return rowsPerSecond;
+  }
+
+  public void setRowsPerSecond(Long rowsPerSecond) {
+    this.rowsPerSecond = rowsPerSecond;
+  }
+}
@@ -0,0 +1,47 @@
+package ch.uzh.ifi.hase.soprafs23.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+
+import java.time.Month;
+import java.util.Map;
+import java.util.SortedMap;
+
+public class UserStatsDTO {
+
+  private Long total;
+  private Map<UserStatus, Long> byStatus;
+  private SortedMap<String, Long> signupsPerDay;
+  private Map<Month, Long> birthdaysPerMonth;
+
+  public Long getTotal() {
+    return total;
+  }
+
+  public void setTotal(Long total) {
+    this.total = total;
+  }
+
+  public Map<UserStatus, Long> getByStatus() {
+    return byStatus;
+  }
+
+  public void setByStatus(Map<UserStatus, Long> byStatus) {
+    this.byStatus = byStatus;
+  }
+
+  public SortedMap<String, Long> getSignupsPerDay() {
+    return signupsPerDay;
+  }
+
+  public void setSignupsPerDay(SortedMap<String, Long> signupsPerDay) {
+    this.signupsPerDay = signupsPerDay;
+  }
+
+  public Map<Month, Long> getBirthdaysPerMonth() {
+    return birthdaysPerMonth;
+  }
+
+  public void setBirthdaysPerMonth(Map<Month, Long> birthdaysPerMonth) {
+    this.birthdaysPerMonth = birthdaysPerMonth;
+  }
+}
@@ -1,13 +1,22 @@
 package ch.uzh.ifi.hase.soprafs23.rest.mapper;
 
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserChangeDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserImportErrorDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserImportReportDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserStatsDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserChange;
+import ch.uzh.ifi.hase.soprafs23.service.UserImportReport;
+import ch.uzh.ifi.hase.soprafs23.service.UserStats;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
 
+import java.util.UUID;
+
 /**
  * DTOMapper
  * This class is responsible for generating classes that will automatically
@@ -26,6 +35,12 @@ public interface DTOMapper {
 
   @Mapping(source = "password", target = "password")
   @Mapping(source = "username", target = "username")
+  @Mapping(target = "id", ignore = true)
+  @Mapping(target = "token", ignore = true)
+  @Mapping(target = "status", ignore = true)
+  @Mapping(target = "creation_date", ignore = true)
+  @Mapping(target = "birthday", ignore = true)
+  @Mapping(target = "deletedAt", ignore = true)
   User convertUserPostDTOtoEntity(UserPostDTO userPostDTO);
 
   @Mapping(source = "id", target = "id")
@@ -39,8 +54,44 @@ public interface DTOMapper {
   @Mapping(source = "username", target = "username")
   @Mapping(source = "status", target = "status")
   @Mapping(source = "birthday", target = "birthday")
+  @Mapping(target = "password", ignore = true)
+  @Mapping(target = "token", ignore = true)
+  @Mapping(target = "creation_date", ignore = true)
+  @Mapping(target = "deletedAt", ignore = true)
   User convertUserPutDTOtoUser(UserPutDTO userPutDTO);
 
   @Mapping(source = "token", target = "token")
   UserTokenDTO convertUserToUserTokenDTO(User user);
+
+  @Mapping(source = "seq", target = "seq")
+  @Mapping(source = "type", target = "type")
+  @Mapping(source = "userId", target = "userId")
+  @Mapping(source = "timestamp", target = "timestamp")
+  UserChangeDTO convertUserChangeToUserChangeDTO(UserChange change);
+
+  @Mapping(source = "total", target = "total")
+  @Mapping(source = "byStatus", target = "byStatus")
+  @Mapping(source = "signupsPerDay", target = "signupsPerDay")
+  @Mapping(source = "birthdaysPerMonth", target = "birthdaysPerMonth")
+  UserStatsDTO convertUserStatsToUserStatsDTO(UserStats stats);
+
+  @Mapping(source = "line", target = "line")
+  @Mapping(source = "message", target = "message")
+  UserImportErrorDTO convertRowErrorToUserImportErrorDTO(UserImportReport.RowError error);
+
+  @Mapping(source = "rowsRead", target = "rowsRead")
+  @Mapping(source = "imported", target = "imported")
+  @Mapping(source = "failed", target = "failed")
+  @Mapping(source = "errors", target = "errors")
+  @Mapping(source = "errorsTruncated", target = "errorsTruncated")
+  @Mapping(source = "elapsedMillis", target = "elapsedMillis")
+  @Mapping(source = "rowsPerSecond", target = "rowsPerSecond")
+  UserImportReportDTO convertUserImportReportToUserImportReportDTO(UserImportReport report);
+
+  /**
+   * the token is a UUID internally, the API keeps its canonical string form
+   */
+  default String convertTokenToString(UUID token) {
+    return token == null ? null : token.toString();
+  }
 }
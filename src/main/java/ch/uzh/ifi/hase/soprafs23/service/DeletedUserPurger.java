@@ -0,0 +1,87 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.monitoring.ConnectionPoolMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+
+/**
+ * Deleted User Purger
+ * Physically removes soft deleted users once they have been deleted for
+ * purge.retention-ms. Every DELETE removes at most purge.batch-size rows in
+ * its own short transaction, with a pause between batches, so the row and
+ * index locks are never held for long. A run only goes on while the database
+ * is quiet (at most purge.max-active-connections connections borrowed from
+ * the pool) and stops after purge.max-batches; the rest waits for the next run.
+ */
+@Component
+public class DeletedUserPurger {
+
+  private static final String DELETE_BATCH = "DELETE FROM USER WHERE deleted_at < ? LIMIT ?";
+
+  private final Logger log = LoggerFactory.getLogger(DeletedUserPurger.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ConnectionPoolMetrics connectionPoolMetrics;
+  private final long retentionMillis;
+  private final int batchSize;
+  private final int maxBatches;
+  private final long pauseMillis;
+  private final int maxActiveConnections;
+
+  public DeletedUserPurger(JdbcTemplate jdbcTemplate,
+                           ConnectionPoolMetrics connectionPoolMetrics,
+                           @Value("${purge.retention-ms:600000}") long retentionMillis,
+                           @Value("${purge.batch-size:200}") int batchSize,
+                           @Value("${purge.max-batches:50}") int maxBatches,
+                           @Value("${purge.pause-ms:20}") long pauseMillis,
+                           @Value("${purge.max-active-connections:2}") int maxActiveConnections) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.connectionPoolMetrics = connectionPoolMetrics;
+    this.retentionMillis = retentionMillis;
+    this.batchSize = Math.max(1, batchSize);
+    this.maxBatches = Math.max(1, maxBatches);
+    this.pauseMillis = Math.max(0, pauseMillis);
+    this.maxActiveConnections = maxActiveConnections;
+  }
+
+  @Scheduled(fixedDelayString = "${purge.interval-ms:60000}", initialDelayString = "${purge.interval-ms:60000}")
+  public void purge() {
+    purgeDeletedBefore(new Timestamp(System.currentTimeMillis() - retentionMillis));
+  }
+
+  /**
+   * @return the number of rows removed
+   */
+  synchronized int purgeDeletedBefore(Timestamp cutoff) {
+    long start = System.nanoTime();
+    int purged = 0;
+    for (int batch = 0; batch < maxBatches; batch++) {
+      if (connectionPoolMetrics.getActiveConnections() > maxActiveConnections) {
+        log.debug("Purge paused, {} connections in use", connectionPoolMetrics.getActiveConnections());
+        break;
+      }
+      int deleted = jdbcTemplate.update(DELETE_BATCH, cutoff, batchSize);
+      purged += deleted;
+      if (deleted < batchSize) {
+        break;
+      }
+      try {
+        Thread.sleep(pauseMillis);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    if (purged > 0) {
+      log.info("Purged {} deleted users in {} ms", purged, (System.nanoTime() - start) / 1_000_000);
+    }
+    return purged;
+  }
+}
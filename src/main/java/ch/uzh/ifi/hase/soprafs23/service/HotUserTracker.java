@@ -0,0 +1,285 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hot User Tracker
+ * Approximate read counts per user id in constant memory: a count-min sketch
+ * (DEPTH rows of counters, each id hashed to one counter per row, the
+ * estimate is the smallest of them) plus the top-k ids by estimate.
+ * Recording a lookup is DEPTH atomic increments. An id that is in the top-k
+ * already only stores its new estimate, without a lock. Only an id that is
+ * not in it and whose estimate beats the smallest count takes the lock, and
+ * it skips the update instead of waiting if another thread holds it; a hot id
+ * comes around again soon enough. Finding the smallest count to evict is a
+ * scan of the k entries, which only happens when an id enters the top-k.
+ * All counts are halved every window, so the top list follows what is read
+ * now rather than what was read since the start.
+ * With hot-users.file set, the top-k is written there on shutdown and read
+ * back on startup, so the StartupWarmup can warm the users that were hot
+ * before the restart.
+ */
+@Component
+public class HotUserTracker {
+
+  static final int DEPTH = 4;
+
+  private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+          0xD6E8FEB86659FD93L};
+
+  private final Logger log = LoggerFactory.getLogger(HotUserTracker.class);
+
+  private final AtomicLongArray counters;
+  private final int width;
+  private final int mask;
+  private final int topK;
+  private final Path file;
+
+  // guards changes of the top-k membership; counts of members change without it
+  private final ReentrantLock admissionLock = new ReentrantLock();
+  private final ConcurrentHashMap<Long, Entry> top;
+  // the smallest count in a full top-k, 0 while it has room; read without the lock
+  private volatile long threshold;
+
+  public HotUserTracker(@Value("${hot-users.sketch-width:4096}") int sketchWidth,
+                        @Value("${hot-users.top-k:100}") int topK,
+                        @Value("${hot-users.file:}") String file) {
+    // a power of two, so the column is a mask of the hash
+    this.width = Integer.highestOneBit(Math.max(16, sketchWidth - 1) << 1);
+    this.mask = width - 1;
+    this.counters = new AtomicLongArray(DEPTH * width);
+    this.topK = Math.max(1, topK);
+    this.top = new ConcurrentHashMap<>(this.topK * 2);
+    this.file = file == null || file.isEmpty() ? null : Paths.get(file);
+  }
+
+  public void record(Long userId) {
+    if (userId == null) {
+      return;
+    }
+    long id = userId;
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      estimate = Math.min(estimate, counters.incrementAndGet(row * width + column(id, row)));
+    }
+    Entry entry = top.get(id);
+    if (entry != null) {
+      // racing stores of the same id may keep the smaller estimate for a moment
+      entry.count = estimate;
+    }
+    else if (estimate > threshold && admissionLock.tryLock()) {
+      try {
+        admit(id, estimate);
+      }
+      finally {
+        admissionLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return the approximate number of recorded lookups of the id in the current windows
+   */
+  public long estimate(long userId) {
+    long estimate = Long.MAX_VALUE;
+    for (int row = 0; row < DEPTH; row++) {
+      estimate = Math.min(estimate, counters.get(row * width + column(userId, row)));
+    }
+    return estimate;
+  }
+
+  /**
+   * @return the hottest ids with their estimated counts, hottest first
+   */
+  public List<Map<String, Object>> top(int limit) {
+    List<Map<String, Object>> users = new ArrayList<>();
+    for (Entry entry : hottest(limit)) {
+      Map<String, Object> user = new LinkedHashMap<>(4);
+      user.put("id", entry.userId);
+      user.put("estimatedLookups", entry.count);
+      users.add(user);
+    }
+    return users;
+  }
+
+  /**
+   * @return the hottest ids, hottest first
+   */
+  public List<Long> topIds(int limit) {
+    List<Long> ids = new ArrayList<>();
+    for (Entry entry : hottest(limit)) {
+      ids.add(entry.userId);
+    }
+    return ids;
+  }
+
+  /**
+   * Halves every counter and top-k count; ids whose count drops to zero leave the top-k.
+   * Lookups recorded while the decay runs may be halved or not, which the
+   * estimate tolerates.
+   */
+  @Scheduled(fixedDelayString = "${hot-users.decay-interval-ms:60000}",
+          initialDelayString = "${hot-users.decay-interval-ms:60000}")
+  public void decay() {
+    for (int i = 0; i < counters.length(); i++) {
+      counters.getAndUpdate(i, count -> count >>> 1);
+    }
+    admissionLock.lock();
+    try {
+      for (Entry entry : top.values()) {
+        entry.count >>>= 1;
+        if (entry.count == 0) {
+          top.remove(entry.userId, entry);
+        }
+      }
+      updateThreshold();
+    }
+    finally {
+      admissionLock.unlock();
+    }
+  }
+
+  /**
+   * reads back the top-k written by save, as if the ids had been looked up
+   * that often
+   */
+  @PostConstruct
+  public void load() {
+    if (file == null || !Files.isRegularFile(file)) {
+      return;
+    }
+    try {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length != 2) {
+          continue;
+        }
+        long id = Long.parseLong(fields[0]);
+        long count = Long.parseLong(fields[1]);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+          estimate = Math.min(estimate, counters.addAndGet(row * width + column(id, row), count));
+        }
+        admissionLock.lock();
+        try {
+          admit(id, estimate);
+        }
+        finally {
+          admissionLock.unlock();
+        }
+      }
+      log.info("Read {} hot users from {}", top.size(), file);
+    }
+    catch (IOException | NumberFormatException e) {
+      log.warn("Could not read the hot users from {}", file, e);
+    }
+  }
+
+  /**
+   * writes the top-k to hot-users.file, one "id count" per line
+   */
+  @PreDestroy
+  public void save() {
+    if (file == null) {
+      return;
+    }
+    List<String> lines = new ArrayList<>();
+    for (Entry entry : hottest(topK)) {
+      lines.add(entry.userId + " " + entry.count);
+    }
+    try {
+      Path tmp = Paths.get(file + ".tmp");
+      Files.write(tmp, lines, StandardCharsets.UTF_8);
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      log.warn("Could not write the hot users to {}", file, e);
+    }
+  }
+
+  int width() {
+    return width;
+  }
+
+  private List<Entry> hottest(int limit) {
+    // copies, so the counts cannot change while they are sorted
+    List<Entry> entries = new ArrayList<>(top.size());
+    for (Entry entry : top.values()) {
+      entries.add(new Entry(entry.userId, entry.count));
+    }
+    entries.sort((a, b) -> Long.compare(b.count, a.count));
+    return entries.subList(0, Math.max(0, Math.min(limit, entries.size())));
+  }
+
+  /**
+   * adds the id to the top-k, evicting the entry with the smallest count if
+   * the top-k is full and the id beats it; called with the admissionLock held
+   */
+  private void admit(long userId, long estimate) {
+    Entry entry = top.get(userId);
+    if (entry != null) {
+      entry.count = Math.max(entry.count, estimate);
+      return;
+    }
+    if (top.size() >= topK) {
+      Entry smallest = smallest();
+      if (estimate <= smallest.count) {
+        // the threshold was stale, members have been read since
+        threshold = smallest.count;
+        return;
+      }
+      top.remove(smallest.userId, smallest);
+    }
+    top.put(userId, new Entry(userId, estimate));
+    updateThreshold();
+  }
+
+  private void updateThreshold() {
+    threshold = top.size() < topK ? 0 : smallest().count;
+  }
+
+  private Entry smallest() {
+    Entry smallest = null;
+    for (Entry entry : top.values()) {
+      if (smallest == null || entry.count < smallest.count) {
+        smallest = entry;
+      }
+    }
+    return smallest;
+  }
+
+  private int column(long id, int row) {
+    long hash = (id ^ (id >>> 32)) * SEEDS[row];
+    return (int) (hash >>> 40) & mask;
+  }
+
+  private static final class Entry {
+    private final long userId;
+    private volatile long count;
+
+    private Entry(long userId, long count) {
+      this.userId = userId;
+      this.count = count;
+    }
+  }
+}
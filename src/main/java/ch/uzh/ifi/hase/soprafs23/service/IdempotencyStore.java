@@ -0,0 +1,194 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency Store
+ * Remembers the outcome of a request per Idempotency-Key for a short time so that
+ * client retries (e.g. after a timeout) are answered with the original result
+ * instead of calling the UserService again.
+ * - successful results and 4xx ResponseStatusExceptions are remembered
+ * - any other failure forgets the key so that a retry runs the request again
+ * - a duplicate that arrives while the first request is still running waits for it
+ * A key is only replayed for the same scope (endpoint and client) and a body
+ * with the same SHA-256 fingerprint, see fingerprint.
+ * The store is bounded; the oldest keys are dropped first.
+ * With cluster.enabled no keys are remembered, since a retry may reach another
+ * node (see UserDirectory).
+ */
+@Component
+public class IdempotencyStore {
+
+  static final int MAX_KEY_LENGTH = 255;
+
+  private final long ttlMillis;
+  private final long waitMillis;
+  private final boolean clustered;
+  private final Map<String, Entry> entries;
+
+  public IdempotencyStore(@Value("${idempotency.ttl-seconds:600}") long ttlSeconds,
+                          @Value("${idempotency.max-entries:10000}") int maxEntries,
+                          @Value("${idempotency.wait-seconds:30}") long waitSeconds,
+                          @Value("${cluster.enabled:false}") boolean clustered) {
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    this.waitMillis = TimeUnit.SECONDS.toMillis(waitSeconds);
+    this.clustered = clustered;
+    // insertion ordered, so the eldest entry is also the one closest to expiry
+    this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Runs the action once per (scope, key). Replays the remembered outcome for
+   * repeated keys.
+   *
+   * @param scope       the endpoint and client the key belongs to, keys are not shared between them
+   * @param key         value of the Idempotency-Key header; null or blank (or a cluster) runs the action directly
+   * @param fingerprint digest of the request body (see fingerprint), a reused key with a different body is rejected
+   * @throws ResponseStatusException 400 if the key is too long, 422 if the key was used for another body
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T execute(String scope, String key, byte[] fingerprint, Supplier<T> action) {
+    if (key == null || key.isBlank() || clustered) {
+      return action.get();
+    }
+    if (key.length() > MAX_KEY_LENGTH) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: Idempotency-Key is too long");
+    }
+    String mapKey = scope + ' ' + key;
+
+    while (true) {
+      Entry entry = new Entry(fingerprint, System.currentTimeMillis() + ttlMillis);
+      Entry existing = putIfAbsent(mapKey, entry);
+
+      if (existing == null) {
+        return (T) run(mapKey, entry, action);
+      }
+      if (!MessageDigest.isEqual(existing.fingerprint, fingerprint)) {
+        throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                "Error: Idempotency-Key was already used for a different request");
+      }
+      Object replayed = await(existing);
+      if (replayed != Entry.RETRY) {
+        return (T) replayed;
+      }
+      // the first request failed without a remembered outcome, try to become the owner
+    }
+  }
+
+  /**
+   * SHA-256 over all fields of a request body; every field is prefixed with its
+   * length, so moving characters between fields changes the digest
+   * @param fields the body's fields in a fixed order, null is allowed
+   */
+  public static byte[] fingerprint(String... fields) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every JVM ships SHA-256
+      throw new IllegalStateException(e);
+    }
+    for (String field : fields) {
+      byte[] bytes = field == null ? new byte[0] : field.getBytes(StandardCharsets.UTF_8);
+      int length = field == null ? -1 : bytes.length;
+      digest.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+      digest.update(bytes);
+    }
+    return digest.digest();
+  }
+
+  private Object run(String mapKey, Entry entry, Supplier<?> action) {
+    try {
+      Object result = action.get();
+      entry.outcome.complete(result);
+      return result;
+    }
+    catch (ResponseStatusException e) {
+      if (e.getStatus().is4xxClientError()) {
+        entry.outcome.completeExceptionally(e);
+      }
+      else {
+        forget(mapKey, entry);
+      }
+      throw e;
+    }
+    catch (RuntimeException | Error e) {
+      forget(mapKey, entry);
+      throw e;
+    }
+  }
+
+  private Object await(Entry existing) {
+    try {
+      return existing.outcome.get(waitMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (ExecutionException e) {
+      throw (ResponseStatusException) e.getCause();
+    }
+    catch (TimeoutException e) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+              "Error: A request with this Idempotency-Key is still in progress");
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Error: Interrupted", e);
+    }
+  }
+
+  private synchronized Entry putIfAbsent(String mapKey, Entry entry) {
+    Entry existing = entries.get(mapKey);
+    if (existing != null && existing.expiresAt < System.currentTimeMillis()) {
+      entries.remove(mapKey);
+      existing = null;
+    }
+    if (existing == null) {
+      entries.put(mapKey, entry);
+    }
+    return existing;
+  }
+
+  private void forget(String mapKey, Entry entry) {
+    synchronized (this) {
+      entries.remove(mapKey, entry);
+    }
+    // wake up waiting duplicates, they will retry on their own
+    entry.outcome.complete(Entry.RETRY);
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private static final class Entry {
+    static final Object RETRY = new Object();
+
+    final byte[] fingerprint;
+    final long expiresAt;
+    final CompletableFuture<Object> outcome = new CompletableFuture<>();
+
+    Entry(byte[] fingerprint, long expiresAt) {
+      this.fingerprint = fingerprint;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Idle Session Sweeper
+ * Users that close the browser never log out and would stay ONLINE forever.
+ * This periodically sets every user that has been idle for longer than
+ * session.idle-timeout-ms to OFFLINE, with one bulk UPDATE per
+ * session.sweep-batch-size users.
+ * Each batch runs in its own transaction that first locks the rows of the
+ * candidates that are still ONLINE. A login locks its row as well and records
+ * its activity before it commits, so a user that logged in after the idle
+ * candidates were collected is either seen as active again or waited for, and
+ * never set OFFLINE right after logging in. The swept users leave the
+ * SessionActivityTracker only once the batch commits; after a rollback they
+ * are still tracked and swept again.
+ * Off by default (session.idle-timeout-ms=0): only logins, signups, token
+ * checks and requests with the token in the Authorization header count as
+ * activity, and the client does not send that header on its reads, so users
+ * that are browsing would be set OFFLINE as well.
+ * Not registered with cluster.enabled: the activity is only known to the node
+ * that served the request (see UserDirectory).
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "false", matchIfMissing = true)
+public class IdleSessionSweeper {
+
+  private final Logger log = LoggerFactory.getLogger(IdleSessionSweeper.class);
+
+  private final UserRepository userRepository;
+  private final SessionActivityTracker sessionActivityTracker;
+  private final UserChangeLog userChangeLog;
+  private final UserStatsService userStatsService;
+  private final TransactionTemplate transactionTemplate;
+  private final long idleTimeoutMillis;
+  private final int batchSize;
+
+  private boolean seeded;
+
+  public IdleSessionSweeper(@Qualifier("userRepository") UserRepository userRepository,
+                            SessionActivityTracker sessionActivityTracker,
+                            UserChangeLog userChangeLog,
+                            UserStatsService userStatsService,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${session.idle-timeout-ms:0}") long idleTimeoutMillis,
+                            @Value("${session.sweep-batch-size:500}") int batchSize) {
+    this.userRepository = userRepository;
+    this.sessionActivityTracker = sessionActivityTracker;
+    this.userChangeLog = userChangeLog;
+    this.userStatsService = userStatsService;
+    this.transactionTemplate = transactionTemplate;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  @Scheduled(fixedDelayString = "${session.sweep-interval-ms:60000}")
+  public synchronized void sweep() {
+    if (idleTimeoutMillis <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (!seeded) {
+      // users that were online before this instance started have no recorded
+      // activity; give them the full timeout from now on
+      for (Long userId : userRepository.findIdsByStatus(UserStatus.ONLINE)) {
+        sessionActivityTracker.trackIfAbsent(userId, now);
+      }
+      seeded = true;
+    }
+
+    Map<Long, Long> idle = sessionActivityTracker.findIdle(now - idleTimeoutMillis);
+    List<Long> idleIds = new ArrayList<>(idle.keySet());
+    int updated = 0;
+    for (int from = 0; from < idleIds.size(); from += batchSize) {
+      List<Long> batch = idleIds.subList(from, Math.min(idleIds.size(), from + batchSize));
+      updated += transactionTemplate.execute(status -> sweepBatch(batch, idle));
+    }
+    if (updated > 0) {
+      log.info("Set {} idle users OFFLINE", updated);
+    }
+  }
+
+  /**
+   * sets those users of the batch OFFLINE that are still ONLINE and have not
+   * been active since they were found idle; called in the batch transaction
+   * @return the number of users set OFFLINE
+   */
+  private int sweepBatch(List<Long> batch, Map<Long, Long> idle) {
+    Set<Long> online = new HashSet<>();
+    for (User user : userRepository.findByIdInAndStatusForUpdate(batch, UserStatus.ONLINE)) {
+      online.add(user.getId());
+    }
+    List<Long> offline = new ArrayList<>();
+    for (Long userId : batch) {
+      if (online.contains(userId) && sessionActivityTracker.isUnchanged(userId, idle.get(userId))) {
+        offline.add(userId);
+      }
+    }
+    // users that are OFFLINE or deleted already are only dropped from the tracker
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        for (Long userId : batch) {
+          sessionActivityTracker.removeIfUnchanged(userId, idle.get(userId));
+        }
+      }
+    });
+    if (offline.isEmpty()) {
+      return 0;
+    }
+    // the rows are locked and ONLINE, so every one of them changes
+    int updated = userRepository.updateStatusByIdIn(UserStatus.OFFLINE, offline);
+    for (Long userId : offline) {
+      userChangeLog.record(UserChangeType.LOGGED_OUT, userId);
+    }
+    userStatsService.statusChanged(UserStatus.ONLINE, UserStatus.OFFLINE, updated);
+    return updated;
+  }
+}
@@ -0,0 +1,44 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Session Activity Filter
+ * Counts every request that carries a token in the Authorization header
+ * (optionally as "Bearer <token>") as activity of the user it belongs to, so
+ * clients that send their token along stay ONLINE while they are in use. The
+ * token is looked up in the SessionActivityTracker only, never in the database;
+ * the endpoints that check a token themselves still do so.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class SessionActivityFilter extends OncePerRequestFilter {
+
+  private static final String BEARER = "Bearer ";
+
+  private final SessionActivityTracker sessionActivityTracker;
+
+  public SessionActivityFilter(SessionActivityTracker sessionActivityTracker) {
+    this.sessionActivityTracker = sessionActivityTracker;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+          throws ServletException, IOException {
+    String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+    if (authorization != null) {
+      sessionActivityTracker.touchToken(authorization.startsWith(BEARER)
+              ? authorization.substring(BEARER.length()) : authorization);
+    }
+    chain.doFilter(request, response);
+  }
+}
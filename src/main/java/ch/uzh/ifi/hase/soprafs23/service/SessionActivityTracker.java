@@ -0,0 +1,133 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session Activity Tracker
+ * Remembers when each logged in user was last active, and by which token, in
+ * memory only. Touching an already tracked user is a map lookup and a plain
+ * store, so it can be done on every authenticated request; requests that only
+ * carry a token are attributed through the token, without a query. The
+ * IdleSessionSweeper uses it to find users that never logged out.
+ */
+@Component
+public class SessionActivityTracker {
+
+  private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+
+  private final ConcurrentHashMap<UUID, Long> userByToken = new ConcurrentHashMap<>();
+
+  private static final class Session {
+    private final UUID token;
+    private volatile long lastActivity;
+
+    private Session(UUID token, long lastActivity) {
+      this.token = token;
+      this.lastActivity = lastActivity;
+    }
+  }
+
+  /**
+   * records activity of the user, authenticated with the given token
+   * @param token null if the caller does not know it
+   */
+  public void touch(Long userId, UUID token) {
+    if (userId == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    Session session = sessions.get(userId);
+    if (session != null && (token == null || token.equals(session.token))) {
+      session.lastActivity = now;
+      return;
+    }
+    Session previous = sessions.put(userId, new Session(token, now));
+    if (previous != null && previous.token != null && !previous.token.equals(token)) {
+      userByToken.remove(previous.token, userId);
+    }
+    if (token != null) {
+      userByToken.put(token, userId);
+    }
+  }
+
+  /**
+   * records activity of the user the token belongs to, if it has a session
+   * here; unknown and malformed tokens are ignored
+   */
+  void touchToken(String token) {
+    UUID parsedToken = UserService.parseToken(token);
+    Long userId = parsedToken == null ? null : userByToken.get(parsedToken);
+    if (userId == null) {
+      return;
+    }
+    Session session = sessions.get(userId);
+    if (session != null && parsedToken.equals(session.token)) {
+      session.lastActivity = System.currentTimeMillis();
+    }
+  }
+
+  public void forget(Long userId) {
+    if (userId != null) {
+      removeSession(userId, sessions.get(userId));
+    }
+  }
+
+  /**
+   * starts tracking a user that is online without any recorded activity
+   * (e.g. from before a restart), does nothing if the user is tracked already
+   */
+  void trackIfAbsent(Long userId, long since) {
+    sessions.putIfAbsent(userId, new Session(null, since));
+  }
+
+  /**
+   * returns all users whose last activity is older than cutoff, with the last
+   * activity seen; they stay tracked until removeIfUnchanged
+   */
+  Map<Long, Long> findIdle(long cutoff) {
+    Map<Long, Long> idle = new HashMap<>();
+    sessions.forEach((userId, session) -> {
+      long lastActivity = session.lastActivity;
+      if (lastActivity < cutoff) {
+        idle.put(userId, lastActivity);
+      }
+    });
+    return idle;
+  }
+
+  /**
+   * @return true if the user is tracked and was not active since findIdle saw it
+   */
+  boolean isUnchanged(Long userId, long lastActivity) {
+    Session session = sessions.get(userId);
+    return session != null && session.lastActivity == lastActivity;
+  }
+
+  /**
+   * stops tracking the user unless it was active since findIdle saw it
+   * @return true if the user was removed
+   */
+  boolean removeIfUnchanged(Long userId, long lastActivity) {
+    Session session = sessions.get(userId);
+    return session != null && session.lastActivity == lastActivity && removeSession(userId, session);
+  }
+
+  private boolean removeSession(Long userId, Session session) {
+    if (session == null || !sessions.remove(userId, session)) {
+      return false;
+    }
+    if (session.token != null) {
+      userByToken.remove(session.token, userId);
+    }
+    return true;
+  }
+
+  int size() {
+    return sessions.size();
+  }
+}
@@ -0,0 +1,39 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+
+import java.util.Date;
+
+/**
+ * One entry of the UserChangeLog; immutable once appended.
+ */
+public final class UserChange {
+
+  private final long seq;
+  private final UserChangeType type;
+  private final Long userId;
+  private final long timestamp;
+
+  UserChange(long seq, UserChangeType type, Long userId, long timestamp) {
+    this.seq = seq;
+    this.type = type;
+    this.userId = userId;
+    this.timestamp = timestamp;
+  }
+
+  public long getSeq() {
+    return seq;
+  }
+
+  public UserChangeType getType() {
+    return type;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public Date getTimestamp() {
+    return new Date(timestamp);
+  }
+}
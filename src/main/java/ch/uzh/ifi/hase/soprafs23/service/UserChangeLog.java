@@ -0,0 +1,109 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * User Change Log
+ * Append-only log of user mutations with monotonically increasing sequence
+ * numbers, so downstream services can sync incrementally instead of re-pulling
+ * all users.
+ * The log is a fixed size ring: appending is one atomic increment and one array
+ * store, and only the most recent entries are retained. A consumer that falls
+ * further behind than that gets 410 GONE and has to re-pull /users. The log
+ * lives in memory and starts over at 0 on a restart, so a since beyond the
+ * last sequence number gets 410 GONE as well.
+ * Changes made inside a transaction are only appended once it commits, so the
+ * sequence follows commit order and rolled back changes never show up.
+ * Listeners are called for every appended change, i.e. after the commit.
+ */
+@Component
+public class UserChangeLog {
+
+  private final AtomicReferenceArray<UserChange> slots;
+  private final int mask;
+  private final AtomicLong lastSeq = new AtomicLong();
+  private final List<Consumer<UserChange>> listeners = new CopyOnWriteArrayList<>();
+
+  public UserChangeLog(@Value("${changelog.capacity:65536}") int capacity) {
+    // round up to a power of two so the slot is a cheap mask of the sequence
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  public void record(UserChangeType type, Long userId) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          append(type, userId);
+        }
+      });
+    }
+    else {
+      append(type, userId);
+    }
+  }
+
+  void append(UserChangeType type, Long userId) {
+    long seq = lastSeq.incrementAndGet();
+    UserChange change = new UserChange(seq, type, userId, System.currentTimeMillis());
+    slots.set((int) (seq & mask), change);
+    for (Consumer<UserChange> listener : listeners) {
+      listener.accept(change);
+    }
+  }
+
+  /**
+   * @param listener called on the committing thread for every change; must be fast and must not throw
+   */
+  public void addListener(Consumer<UserChange> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * @return up to limit changes with a sequence number greater than since, oldest first
+   * @throws ResponseStatusException 410 if changes after since are no longer retained,
+   * or since is ahead of the log because it was restarted
+   */
+  public List<UserChange> since(long since, int limit) {
+    long last = lastSeq.get();
+    if (since > last) {
+      throw new ResponseStatusException(HttpStatus.GONE,
+              "Error: Change " + since + " is not in this log (restarted at 0), re-fetch /users");
+    }
+    long oldestRetained = Math.max(1, last - mask);
+    if (since + 1 < oldestRetained) {
+      throw new ResponseStatusException(HttpStatus.GONE,
+              "Error: Changes after " + since + " are no longer retained, re-fetch /users");
+    }
+    List<UserChange> changes = new ArrayList<>((int) Math.max(0, Math.min(limit, last - since)));
+    for (long seq = since + 1; seq <= last && changes.size() < limit; seq++) {
+      UserChange change = slots.get((int) (seq & mask));
+      // stop at a gap: the sequence number is taken but the entry not yet stored,
+      // or it was overwritten while reading; the consumer picks it up on its next call
+      if (change == null || change.getSeq() != seq) {
+        break;
+      }
+      changes.add(change);
+    }
+    return changes;
+  }
+
+  public long lastSeq() {
+    return lastSeq.get();
+  }
+}
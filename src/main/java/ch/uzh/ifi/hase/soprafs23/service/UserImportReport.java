@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk user import, see UserImportService.
+ */
+public final class UserImportReport {
+
+  private final long rowsRead;
+  private final long imported;
+  private final long failed;
+  private final List<RowError> errors;
+  private final boolean errorsTruncated;
+  private final long elapsedMillis;
+
+  UserImportReport(long rowsRead, long imported, long failed, List<RowError> errors, boolean errorsTruncated,
+                   long elapsedMillis) {
+    this.rowsRead = rowsRead;
+    this.imported = imported;
+    this.failed = failed;
+    this.errors = errors;
+    this.errorsTruncated = errorsTruncated;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public long getRowsRead() {
+    return rowsRead;
+  }
+
+  public long getImported() {
+    return imported;
+  }
+
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * @return the first failed rows ordered by line, at most import.max-reported-errors
+   */
+  public List<RowError> getErrors() {
+    return errors;
+  }
+
+  public boolean isErrorsTruncated() {
+    return errorsTruncated;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public long getRowsPerSecond() {
+    return elapsedMillis == 0 ? rowsRead : rowsRead * 1000 / elapsedMillis;
+  }
+
+  public static final class RowError {
+    private final long line;
+    private final String message;
+
+    RowError(long line, String message) {
+      this.line = line;
+      this.message = message;
+    }
+
+    public long getLine() {
+      return line;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+}
@@ -0,0 +1,501 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * User Import Service
+ * Bulk import of users from a CSV or NDJSON stream, e.g. when migrating from
+ * another platform. The stream is read line by line and never held in memory
+ * as a whole.
+ * Rows are routed to one of import.parallelism workers by the hash of their
+ * username, so all rows with the same username are handled by the same worker
+ * in file order. Each worker collects import.chunk-size rows, drops usernames
+ * that already exist (one query per chunk) and inserts the rest in one batched
+ * transaction. Imported users are OFFLINE and get a fresh token.
+ * Rows that cannot be imported (missing fields, invalid birthday, taken
+ * username) are reported with their line number instead of failing the import.
+ * Only one import runs at a time, each one already uses all of its workers.
+ */
+@Service
+public class UserImportService {
+
+  public enum Format { CSV, NDJSON }
+
+  static final int MAX_USERNAME_LENGTH = 255;
+
+  private static final String INSERT = "INSERT INTO USER (id, username, password, token, status, creation_date,"
+          + " birthday, birthday_day) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final List<Row> END = Collections.emptyList();
+
+  private final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+  private final UserChangeLog userChangeLog;
+  private final UserStatsService userStatsService;
+  private final int chunkSize;
+  private final int parallelism;
+  private final int maxReportedErrors;
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  public UserImportService(JdbcTemplate jdbcTemplate,
+                           NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                           TransactionTemplate transactionTemplate,
+                           ObjectMapper objectMapper,
+                           UserChangeLog userChangeLog,
+                           UserStatsService userStatsService,
+                           @Value("${import.chunk-size:5000}") int chunkSize,
+                           @Value("${import.parallelism:4}") int parallelism,
+                           @Value("${import.max-reported-errors:1000}") int maxReportedErrors) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.objectMapper = objectMapper;
+    this.userChangeLog = userChangeLog;
+    this.userStatsService = userStatsService;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.parallelism = Math.max(1, parallelism);
+    this.maxReportedErrors = maxReportedErrors;
+  }
+
+  /**
+   * CSV needs a header line naming the columns username, password and optionally
+   * birthday (yyyy-MM-dd); NDJSON lines are objects with these fields.
+   *
+   * @throws ResponseStatusException 400 if the CSV header lacks a required column,
+   * 409 if another import is running
+   */
+  public UserImportReport importUsers(InputStream input, Format format) throws IOException {
+    if (!running.compareAndSet(false, true)) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, "Error: Another import is running");
+    }
+    try {
+      return runImport(input, format);
+    }
+    finally {
+      running.set(false);
+    }
+  }
+
+  private UserImportReport runImport(InputStream input, Format format) throws IOException {
+    long start = System.nanoTime();
+    Progress progress = new Progress(maxReportedErrors);
+
+    List<BlockingQueue<List<Row>>> queues = new ArrayList<>(parallelism);
+    AtomicInteger threads = new AtomicInteger();
+    ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "user-import-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    List<List<Row>> pending = new ArrayList<>(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      // two chunks per worker in flight at most, the reader waits for slow workers
+      BlockingQueue<List<Row>> queue = new ArrayBlockingQueue<>(2);
+      queues.add(queue);
+      pending.add(new ArrayList<>(chunkSize));
+      workers.execute(() -> work(queue, progress));
+    }
+
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 64 * 1024);
+      RowParser parser = format == Format.CSV ? new CsvRowParser(reader.readLine()) : this::parseJson;
+      long lineNumber = format == Format.CSV ? 1 : 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank()) {
+          continue;
+        }
+        progress.rowsRead.incrementAndGet();
+        Row row;
+        try {
+          row = parser.parse(lineNumber, line);
+        }
+        catch (IllegalArgumentException e) {
+          progress.fail(lineNumber, e.getMessage());
+          continue;
+        }
+        int worker = Math.floorMod(row.username.hashCode(), parallelism);
+        List<Row> chunk = pending.get(worker);
+        chunk.add(row);
+        if (chunk.size() == chunkSize) {
+          queues.get(worker).put(chunk);
+          pending.set(worker, new ArrayList<>(chunkSize));
+        }
+        progress.logPeriodically(start);
+      }
+      for (int i = 0; i < parallelism; i++) {
+        if (!pending.get(i).isEmpty()) {
+          queues.get(i).put(pending.get(i));
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Error: Import interrupted", e);
+    }
+    finally {
+      for (BlockingQueue<List<Row>> queue : queues) {
+        putEnd(queue);
+      }
+      workers.shutdown();
+      awaitQuietly(workers);
+    }
+
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    UserImportReport report = progress.toReport(elapsedMillis);
+    log.info("import_done rows={} imported={} failed={} elapsed_ms={} rows_per_s={}", report.getRowsRead(),
+            report.getImported(), report.getFailed(), elapsedMillis, report.getRowsPerSecond());
+    return report;
+  }
+
+  private void work(BlockingQueue<List<Row>> queue, Progress progress) {
+    try {
+      List<Row> chunk;
+      while ((chunk = queue.take()) != END) {
+        try {
+          importChunk(chunk, progress);
+        }
+        catch (RuntimeException e) {
+          // keep consuming so the reader never blocks on a dead worker
+          log.warn("Importing a chunk of {} users failed", chunk.size(), e);
+          for (Row row : chunk) {
+            progress.fail(row.line, "could not be imported: " + e.getMessage());
+          }
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  void importChunk(List<Row> chunk, Progress progress) {
+    Set<String> seen = new HashSet<>(chunk.size() * 2);
+    List<String> usernames = new ArrayList<>(chunk.size());
+    for (Row row : chunk) {
+      usernames.add(row.username);
+    }
+    Set<String> existing = new HashSet<>(namedParameterJdbcTemplate.queryForList(
+            "SELECT username FROM USER WHERE username IN (:usernames)", Map.of("usernames", usernames), String.class));
+
+    List<Row> accepted = new ArrayList<>(chunk.size());
+    for (Row row : chunk) {
+      if (existing.contains(row.username) || !seen.add(row.username)) {
+        progress.fail(row.line, "username " + row.username + " is already taken");
+      }
+      else {
+        accepted.add(row);
+      }
+    }
+    if (accepted.isEmpty()) {
+      return;
+    }
+
+    List<Long> ids = jdbcTemplate.queryForList(
+            "SELECT NEXT VALUE FOR hibernate_sequence FROM SYSTEM_RANGE(1, ?)", Long.class, accepted.size());
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    List<Object[]> batch = new ArrayList<>(accepted.size());
+    for (int i = 0; i < accepted.size(); i++) {
+      batch.add(accepted.get(i).toInsertArgs(ids.get(i), now));
+    }
+
+    List<Row> imported;
+    List<Long> importedIds;
+    try {
+      transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, batch));
+      imported = accepted;
+      importedIds = ids;
+    }
+    catch (DataIntegrityViolationException e) {
+      // a username was taken concurrently (e.g. by POST /users), find it row by row
+      imported = new ArrayList<>(accepted.size());
+      importedIds = new ArrayList<>(accepted.size());
+      for (int i = 0; i < accepted.size(); i++) {
+        try {
+          jdbcTemplate.update(INSERT, batch.get(i));
+          imported.add(accepted.get(i));
+          importedIds.add(ids.get(i));
+        }
+        catch (DataIntegrityViolationException rowFailure) {
+          progress.fail(accepted.get(i).line, "username " + accepted.get(i).username + " is already taken");
+        }
+      }
+    }
+
+    for (int i = 0; i < imported.size(); i++) {
+      User user = imported.get(i).toUser(importedIds.get(i), now);
+      userChangeLog.record(UserChangeType.CREATED, user.getId());
+      userStatsService.userCreated(user);
+    }
+    progress.imported.addAndGet(imported.size());
+  }
+
+  private Row parseJson(long line, String json) {
+    JsonNode node;
+    try {
+      node = objectMapper.readTree(json);
+    }
+    catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("invalid JSON");
+    }
+    return Row.of(line, text(node, "username"), text(node, "password"), text(node, "birthday"));
+  }
+
+  private static String text(JsonNode node, String field) {
+    JsonNode value = node.get(field);
+    return value == null || value.isNull() ? null : value.asText();
+  }
+
+  /**
+   * the workers always drain their queue, so this only waits for a free slot
+   */
+  private static void putEnd(BlockingQueue<List<Row>> queue) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        queue.put(END);
+        break;
+      }
+      catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void awaitQuietly(ExecutorService workers) {
+    try {
+      while (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+        log.info("Waiting for the import workers to finish");
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @FunctionalInterface
+  private interface RowParser {
+    Row parse(long line, String text);
+  }
+
+  /**
+   * Minimal CSV: comma separated, fields may be quoted with "" as escaped quote;
+   * quoted fields cannot span lines.
+   */
+  static final class CsvRowParser implements RowParser {
+    private final int usernameColumn;
+    private final int passwordColumn;
+    private final int birthdayColumn;
+
+    CsvRowParser(String header) {
+      if (header == null) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: The CSV has no header line");
+      }
+      List<String> columns = split(header);
+      this.usernameColumn = columns.indexOf("username");
+      this.passwordColumn = columns.indexOf("password");
+      this.birthdayColumn = columns.indexOf("birthday");
+      if (usernameColumn < 0 || passwordColumn < 0) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Error: The CSV header needs the columns username and password");
+      }
+    }
+
+    @Override
+    public Row parse(long line, String text) {
+      List<String> fields = split(text);
+      return Row.of(line, field(fields, usernameColumn), field(fields, passwordColumn), field(fields, birthdayColumn));
+    }
+
+    private static String field(List<String> fields, int column) {
+      return column >= 0 && column < fields.size() ? fields.get(column) : null;
+    }
+
+    static List<String> split(String text) {
+      List<String> fields = new ArrayList<>(4);
+      StringBuilder field = new StringBuilder();
+      boolean quoted = false;
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (quoted) {
+          if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+            field.append('"');
+            i++;
+          }
+          else if (c == '"') {
+            quoted = false;
+          }
+          else {
+            field.append(c);
+          }
+        }
+        else if (c == '"') {
+          quoted = true;
+        }
+        else if (c == ',') {
+          fields.add(field.toString().trim());
+          field.setLength(0);
+        }
+        else {
+          field.append(c);
+        }
+      }
+      if (quoted) {
+        throw new IllegalArgumentException("unterminated quote");
+      }
+      fields.add(field.toString().trim());
+      return fields;
+    }
+  }
+
+  static final class Row {
+    final long line;
+    final String username;
+    final String password;
+    final Date birthday;
+
+    private Row(long line, String username, String password, Date birthday) {
+      this.line = line;
+      this.username = username;
+      this.password = password;
+      this.birthday = birthday;
+    }
+
+    static Row of(long line, String username, String password, String birthday) {
+      if (username == null || username.isBlank()) {
+        throw new IllegalArgumentException("username is missing");
+      }
+      if (username.length() > MAX_USERNAME_LENGTH) {
+        throw new IllegalArgumentException("username is longer than " + MAX_USERNAME_LENGTH + " characters");
+      }
+      if (password == null || password.isEmpty()) {
+        throw new IllegalArgumentException("password is missing");
+      }
+      Date birthdayDate = null;
+      if (birthday != null && !birthday.isEmpty()) {
+        try {
+          // UTC midnight, like a birthday that Jackson parses for PUT /users/{userid}
+          birthdayDate = Date.from(LocalDate.parse(birthday).atStartOfDay(ZoneOffset.UTC).toInstant());
+        }
+        catch (DateTimeParseException e) {
+          throw new IllegalArgumentException("birthday " + birthday + " is not a yyyy-MM-dd date");
+        }
+      }
+      return new Row(line, username, password, birthdayDate);
+    }
+
+    Object[] toInsertArgs(long id, Timestamp creationDate) {
+      UUID token = UUID.randomUUID();
+      byte[] tokenBytes = ByteBuffer.allocate(16)
+              .putLong(token.getMostSignificantBits()).putLong(token.getLeastSignificantBits()).array();
+      return new Object[] {id, username, password, tokenBytes, UserStatus.OFFLINE.ordinal(), creationDate,
+              birthday == null ? null : new Timestamp(birthday.getTime()), User.birthdayDayOf(birthday)};
+    }
+
+    User toUser(long id, Date creationDate) {
+      User user = new User();
+      user.setId(id);
+      user.setUsername(username);
+      user.setStatus(UserStatus.OFFLINE);
+      user.setCreation_date(creationDate);
+      user.setBirthday(birthday);
+      return user;
+    }
+  }
+
+  static final class Progress {
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    final AtomicLong rowsRead = new AtomicLong();
+    final AtomicLong imported = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger reportedErrors = new AtomicInteger();
+    private final ConcurrentLinkedQueue<UserImportReport.RowError> errors = new ConcurrentLinkedQueue<>();
+    private final int maxReportedErrors;
+    private long lastLog = System.nanoTime();
+
+    Progress(int maxReportedErrors) {
+      this.maxReportedErrors = maxReportedErrors;
+    }
+
+    void fail(long line, String message) {
+      failed.incrementAndGet();
+      if (reportedErrors.incrementAndGet() <= maxReportedErrors) {
+        errors.add(new UserImportReport.RowError(line, message));
+      }
+    }
+
+    /**
+     * only called by the reading thread
+     */
+    void logPeriodically(long start) {
+      long now = System.nanoTime();
+      if (now - lastLog >= LOG_INTERVAL_NANOS) {
+        lastLog = now;
+        long read = rowsRead.get();
+        LoggerFactory.getLogger(UserImportService.class).info(
+                "import_progress rows={} imported={} failed={} rows_per_s={}", read, imported.get(), failed.get(),
+                read * 1_000_000_000L / Math.max(1, now - start));
+      }
+    }
+
+    UserImportReport toReport(long elapsedMillis) {
+      List<UserImportReport.RowError> sorted = new ArrayList<>(errors);
+      sorted.sort(Comparator.comparingLong(UserImportReport.RowError::getLine));
+      return new UserImportReport(rowsRead.get(), imported.get(), failed.get(), sorted,
+              reportedErrors.get() > maxReportedErrors, elapsedMillis);
+    }
+  }
+}
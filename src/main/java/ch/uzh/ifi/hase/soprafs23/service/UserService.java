@@ -1,7 +1,10 @@
 package ch.uzh.ifi.hase.soprafs23.service;
 
+import ch.uzh.ifi.hase.soprafs23.cluster.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
 import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
@@ -9,6 +12,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,6 +23,8 @@ import org.springframework.web.server.ResponseStatusException;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -41,13 +50,30 @@ public class UserService {
 
   private final UserRepository userRepository;
 
+  private final UserChangeLog userChangeLog;
+
+  private final SessionActivityTracker sessionActivityTracker;
+
+  private final UserStatsService userStatsService;
+
+  private final HotUserTracker hotUserTracker;
+
+  private final UserDirectory userDirectory;
+
   @Autowired
-  public UserService(@Qualifier("userRepository") UserRepository userRepository) {
+  public UserService(@Qualifier("userRepository") UserRepository userRepository, UserChangeLog userChangeLog,
+                     SessionActivityTracker sessionActivityTracker, UserStatsService userStatsService,
+                     HotUserTracker hotUserTracker, UserDirectory userDirectory) {
     this.userRepository = userRepository;
+    this.userChangeLog = userChangeLog;
+    this.sessionActivityTracker = sessionActivityTracker;
+    this.userStatsService = userStatsService;
+    this.hotUserTracker = hotUserTracker;
+    this.userDirectory = userDirectory;
   }
 
   public User createUser(User newUser) {
-    newUser.setToken(UUID.randomUUID().toString());
+    newUser.setToken(UUID.randomUUID());
     newUser.setStatus(UserStatus.ONLINE);
     newUser.setCreation_date(new Date());
     /* try {
@@ -65,9 +91,12 @@ public class UserService {
     // saves the given entity but data is only persisted in the database once
     // flush() is called
     newUser = userRepository.save(newUser);
-    userRepository.flush();
+    saveUsernameChange();
 
     log.debug("Created Information for User: {}", newUser);
+    userChangeLog.record(UserChangeType.CREATED, newUser.getId());
+    userStatsService.userCreated(newUser);
+    sessionActivityTracker.touch(newUser.getId(), newUser.getToken());
 
     return newUser;
   }
@@ -77,31 +106,120 @@ public class UserService {
   }
 
   /**
-   * converts given String id to a Long and returns the corresponding User entity from the database
+   * returns one page of users ordered by id, optionally only those with the given status
+   * @param status null for all users
+   */
+  public List<User> getUsers(UserStatus status, int page, int size) {
+      Pageable pageable = PageRequest.of(page, size, Sort.by("id"));
+      if (status == null) {
+          return this.userRepository.findAllBy(pageable);
+      }
+      return this.userRepository.findByStatus(status, pageable);
+  }
+
+  /**
+   * returns the users whose birthday is within the next days (today included),
+   * in the order their birthdays come up; the window may wrap around the new year
+   */
+  public List<User> getUpcomingBirthdays(int days) {
+      LocalDate today = LocalDate.now(ZoneOffset.UTC);
+      LocalDate last = today.plusDays(days - 1L);
+      int from = today.getMonthValue() * 100 + today.getDayOfMonth();
+      int to = last.getMonthValue() * 100 + last.getDayOfMonth();
+
+      if (from <= to) {
+          return userRepository.findByBirthdayDayBetweenOrderByBirthdayDayAscIdAsc(from, to);
+      }
+      // wraps around the new year: rest of this year first, then the start of the next
+      List<User> upcoming = new ArrayList<>(
+              userRepository.findByBirthdayDayBetweenOrderByBirthdayDayAscIdAsc(from, 1231));
+      upcoming.addAll(userRepository.findByBirthdayDayBetweenOrderByBirthdayDayAscIdAsc(101, to));
+      return upcoming;
+  }
+
+  /**
+   * returns the aggregate user counters, served from memory
+   * @param days number of days up to and including today to report signups for
+   */
+  public UserStats getStats(int days) {
+      return userStatsService.getStats(days);
+  }
+
+  /**
+   * returns the recorded user changes after the given sequence number, oldest first
+   * @throws org.springframework.web.server.ResponseStatusException (Http-Status 410; the changes are no longer
+   * retained or since is ahead of the log after a restart,
+   * 404; in a cluster, where each node only logs its own changes)
+   */
+  public List<UserChange> getChanges(long since, int limit) {
+      if (userDirectory.isEnabled()) {
+          throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Error: The change feed is not available in a cluster");
+      }
+      return userChangeLog.since(since, limit);
+  }
+
+  /**
+   * converts given String id to a Long and returns the corresponding User; in
+   * a cluster, users of this node's partition come from the UserDirectory and
+   * are detached copies, changes to them have to go through findUserToChange
    * @throws org.springframework.web.server.ResponseStatusException (Http-Status 404; not found)
    * */
   public User getUserById(String userid) {
 
-        Long id;
-        Optional<User> user;
-        try{
-            id = Long.parseLong(userid);
-            user = this.userRepository.findById(id);
-        }
-        catch(NumberFormatException e)
-        {
+        Long id = parseUserId(userid);
+        if(id == null) {
             // if the provided id isn't a long it cannot exist
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Error: The requested id does not exist");
+            throw ExpectedFailure.idNotFound();
         }
+        Optional<User> user = this.userDirectory.findById(id);
         if(user.isEmpty()){
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Error: The requested user does not exist");
+            throw ExpectedFailure.userNotFound();
         }
         return user.get();
     }
 
+  /**
+   * like getUserById, but always the managed entity from the repository, with
+   * its row locked until the transaction ends; concurrent changes of the same
+   * user are applied (and counted in the stats) one after the other
+   */
+  private User findUserToChange(String userid) {
+        Long id = parseUserId(userid);
+        if(id == null) {
+            throw ExpectedFailure.idNotFound();
+        }
+        return this.userRepository.findByIdForUpdate(id).orElseThrow(ExpectedFailure::userNotFound);
+    }
+
+  /**
+   * parses a path id without going through NumberFormatException for the
+   * common garbage inputs (scanners hit /users/{userid} with anything)
+   * @return the id, or null if userid is not a valid long
+   */
+  public static Long parseUserId(String userid) {
+      if (userid == null || userid.isEmpty() || userid.length() > 19) {
+          return null;
+      }
+      for (int i = 0; i < userid.length(); i++) {
+          char c = userid.charAt(i);
+          if (c < '0' || c > '9') {
+              return null;
+          }
+      }
+      if (userid.length() < 19) {
+          return Long.parseLong(userid);
+      }
+      // 19 digits may still overflow a long
+      try {
+          return Long.parseLong(userid);
+      }
+      catch (NumberFormatException e) {
+          return null;
+      }
+  }
+
   public void updateUser(User updatedUser, String id) {
-      User origUser = getUserById(id);
+      User origUser = findUserToChange(id);
 
       if (origUser == null) {
           throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Error: The provided user-id is invalid");
@@ -114,6 +232,7 @@ public class UserService {
       }
 
       if(updatedUser.getBirthday() != null) {
+          userStatsService.birthdayChanged(origUser.getBirthday(), updatedUser.getBirthday());
           origUser.setBirthday(updatedUser.getBirthday());
 
           /*
@@ -128,19 +247,48 @@ public class UserService {
       }
 
       userRepository.save(origUser);
-      userRepository.flush();
+      saveUsernameChange();
+      userChangeLog.record(UserChangeType.UPDATED, origUser.getId());
+  }
+
+  /**
+   * Marks the user deleted; from then on no query finds it. The row, and with
+   * it the username, is only removed by the DeletedUserPurger, so the delete
+   * itself is a single row UPDATE that leaves the unique indexes alone.
+   * Only the user itself may delete its account. The row stays locked from the
+   * token check to the commit, and the UPDATE only applies to a row that is not
+   * deleted yet, so concurrent deletes take the user out of the stats once.
+   * @throws org.springframework.web.server.ResponseStatusException (Http-Status 404; not found, 401; token mismatch)
+   */
+  public void deleteUser(String userid, String token) {
+      Long id = parseUserId(userid);
+      if (id == null) {
+          throw ExpectedFailure.idNotFound();
+      }
+      User user = userRepository.findByIdForUpdate(id).orElseThrow(ExpectedFailure::userNotFound);
+      checkToken(user, token);
+
+      if (userRepository.softDeleteById(id, new Date()) == 0) {
+          throw ExpectedFailure.userNotFound();
+      }
+      userStatsService.userDeleted(user);
+      userChangeLog.record(UserChangeType.DELETED, id);
+      sessionActivityTracker.forget(id);
   }
 
   public void logout(String token) {
-      User user = userRepository.findByToken(token);
+      UUID parsedToken = parseToken(token);
+      // a token that isn't a UUID cannot belong to anyone, no need to ask the database
+      User user = parsedToken == null ? null : userRepository.findByToken(parsedToken);
 
       if(user == null) {
-          throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The user you tried to log out was not found");
+          throw ExpectedFailure.logoutUserNotFound();
       }
+      hotUserTracker.record(user.getId());
 
-      user.setStatus(UserStatus.OFFLINE);
-      userRepository.save(user);
-      userRepository.flush();
+      changeStatus(user, UserStatus.OFFLINE);
+      userChangeLog.record(UserChangeType.LOGGED_OUT, user.getId());
+      sessionActivityTracker.forget(user.getId());
 
 
   }
@@ -151,13 +299,13 @@ public class UserService {
       String givenUsername = userToBeValidated.getUsername();
       String givenPassword = userToBeValidated.getPassword();
 
-      // get user and check if username is valid
-      User user = this.userRepository.findByUsername(givenUsername);
+      // get user and check if username is valid; the row stays locked until
+      // the commit, so the IdleSessionSweeper cannot set it OFFLINE in between
+      User user = this.userRepository.findByUsernameForUpdate(givenUsername);
 
       // if user doesn't exist
       if (user == null) {
-          throw new ResponseStatusException(HttpStatus.UNAUTHORIZED,
-                  "Error: Password or username incorrect");
+          throw ExpectedFailure.badCredentials();
       }
 
       // retrieve password
@@ -165,15 +313,29 @@ public class UserService {
 
       // if passwords don't match
       if(!(actualPassword.equals(givenPassword))) {
-          throw new ResponseStatusException(HttpStatus.UNAUTHORIZED,
-                  "Error: Password or username incorrect");
+          throw ExpectedFailure.badCredentials();
       }
 
-      user.setStatus(UserStatus.ONLINE);
+      sessionActivityTracker.touch(user.getId(), user.getToken());
+      changeStatus(user, UserStatus.ONLINE);
+      userChangeLog.record(UserChangeType.LOGGED_IN, user.getId());
 
       return user;
   }
 
+  /**
+   * Sets the status with a conditional UPDATE (only if it differs), so the
+   * stats count the transition only if this call changed the row: of two
+   * concurrent logins of an OFFLINE user, one moves the counters.
+   */
+  private void changeStatus(User user, UserStatus status) {
+      int changed = userRepository.updateStatusByIdIn(status, List.of(user.getId()));
+      // there are two statuses, a changed row had the other one
+      UserStatus previous = status == UserStatus.ONLINE ? UserStatus.OFFLINE : UserStatus.ONLINE;
+      userStatsService.statusChanged(previous, status, changed);
+      user.setStatus(status);
+  }
+
   /**
    * Matches provided token with token of user with given ID
    * @throws ResponseStatusException HttpStatus.UNAUTHORIZED if the tokens don't match*/
@@ -181,8 +343,82 @@ public class UserService {
 
       User requestedUser = getUserById(userToMatchId);
 
-      if(!requestedUser.getToken().equals(userToken)) {
-          throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Error: Token mismatch");
+      checkToken(requestedUser, userToken);
+      sessionActivityTracker.touch(requestedUser.getId(), requestedUser.getToken());
+  }
+
+  /**
+   * @throws ResponseStatusException HttpStatus.UNAUTHORIZED if the token is not the user's
+   */
+  private static void checkToken(User user, String token) {
+      if(!user.getToken().equals(parseToken(token))) {
+          throw ExpectedFailure.tokenMismatch();
+      }
+  }
+
+  /**
+   * parses a token in the canonical UUID string form (8-4-4-4-12 hex digits,
+   * ASCII only; other Unicode digits are not part of a token)
+   * @return the token, or null if it is malformed
+   */
+  static UUID parseToken(String token) {
+      if (token == null || token.length() != 36) {
+          return null;
+      }
+      long mostSigBits = 0;
+      long leastSigBits = 0;
+      int digits = 0;
+      for (int i = 0; i < 36; i++) {
+          char c = token.charAt(i);
+          if (i == 8 || i == 13 || i == 18 || i == 23) {
+              if (c != '-') {
+                  return null;
+              }
+              continue;
+          }
+          int digit = hexDigit(c);
+          if (digit < 0) {
+              return null;
+          }
+          if (digits < 16) {
+              mostSigBits = (mostSigBits << 4) | digit;
+          }
+          else {
+              leastSigBits = (leastSigBits << 4) | digit;
+          }
+          digits++;
+      }
+      return new UUID(mostSigBits, leastSigBits);
+  }
+
+  /**
+   * @return the value of 0-9, a-f or A-F, -1 for any other character
+   */
+  private static int hexDigit(char c) {
+      if (c >= '0' && c <= '9') {
+          return c - '0';
+      }
+      if (c >= 'a' && c <= 'f') {
+          return c - 'a' + 10;
+      }
+      if (c >= 'A' && c <= 'F') {
+          return c - 'A' + 10;
+      }
+      return -1;
+  }
+
+  /**
+   * flushes a new or changed username; a soft deleted user still holds its
+   * username in the unique index until it is purged, which findByUsername
+   * (and so checkIfUsernameTaken) cannot see
+   * @throws org.springframework.web.server.ResponseStatusException (Http-Status 409; Conflict)
+   */
+  private void saveUsernameChange() {
+      try {
+          userRepository.flush();
+      }
+      catch (DataIntegrityViolationException e) {
+          throw ExpectedFailure.usernameTaken();
       }
   }
 
@@ -191,8 +427,7 @@ public class UserService {
       if (userByUsername == null)
       {
           // throws 404 (conflict) http status if no user with give username is found
-          throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                  "The given username does not exist");
+          throw ExpectedFailure.usernameNotFound();
       }
   }
 
@@ -204,8 +439,7 @@ public class UserService {
       User userByUsername = userRepository.findByUsername(userToBeCreated.getUsername());
 
       if (userByUsername != null) {
-          throw new ResponseStatusException(HttpStatus.CONFLICT,
-                  "Error: The username you entered is already taken.");
+          throw ExpectedFailure.usernameTaken();
       }
   }
 
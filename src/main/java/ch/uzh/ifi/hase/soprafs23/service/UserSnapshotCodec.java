@@ -0,0 +1,218 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * User Snapshot Codec
+ * Compact binary file format for a dump of the USER table.
+ * Layout (big endian):
+ * - header: magic "USNP", version, creation time (long)
+ * - blocks: row count (int), payload length (int), payload, CRC32C of the payload (int)
+ * - end: a block header with row count 0, followed by the total row count (long)
+ * A row is: id (long), username, password (int length + UTF-8), token (16 bytes),
+ * status ordinal (byte), creation_date (long millis), birthday (long millis, NO_DATE if null).
+ * Reading maps the file into memory and hands out rows in the column order of
+ * {@link #INSERT_COLUMNS}, ready for a JDBC batch insert.
+ */
+final class UserSnapshotCodec {
+
+  static final String INSERT_COLUMNS = "id, username, password, token, status, creation_date, birthday";
+
+  static final int MAGIC = 0x55534E50;
+  static final int VERSION = 1;
+  static final int BLOCK_ROWS = 4096;
+
+  private static final long NO_DATE = Long.MIN_VALUE;
+  private static final int HEADER_BYTES = 4 + 4 + 8;
+  private static final int BLOCK_HEADER_BYTES = 4 + 4;
+
+  private UserSnapshotCodec() {
+  }
+
+  /**
+   * Streams rows into a snapshot file block by block; only one block is held in memory.
+   */
+  static final class Writer implements Closeable {
+    private final FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer block = ByteBuffer.allocate(256 * 1024);
+    private int blockRows;
+    private long totalRows;
+
+    Writer(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+      writeFully(header);
+    }
+
+    void append(long id, String username, String password, byte[] token, int status,
+                long creationDate, Long birthday) throws IOException {
+      byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+      byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+      if (token.length != 16) {
+        throw new IOException("token of user " + id + " is not 16 bytes");
+      }
+      ensureCapacity(8 + 4 + usernameBytes.length + 4 + passwordBytes.length + 16 + 1 + 8 + 8);
+
+      block.putLong(id);
+      block.putInt(usernameBytes.length).put(usernameBytes);
+      block.putInt(passwordBytes.length).put(passwordBytes);
+      block.put(token);
+      block.put((byte) status);
+      block.putLong(creationDate);
+      block.putLong(birthday == null ? NO_DATE : birthday);
+
+      totalRows++;
+      if (++blockRows == BLOCK_ROWS) {
+        flushBlock();
+      }
+    }
+
+    long rows() {
+      return totalRows;
+    }
+
+    private void ensureCapacity(int bytes) {
+      if (block.remaining() < bytes) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(block.capacity() * 2, block.position() + bytes));
+        block.flip();
+        larger.put(block);
+        block = larger;
+      }
+    }
+
+    private void flushBlock() throws IOException {
+      if (blockRows == 0) {
+        return;
+      }
+      block.flip();
+      crc.reset();
+      crc.update(block.duplicate());
+
+      ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+      header.putInt(blockRows).putInt(block.remaining()).flip();
+      writeFully(header);
+      writeFully(block);
+      ByteBuffer checksum = ByteBuffer.allocate(4);
+      checksum.putInt((int) crc.getValue()).flip();
+      writeFully(checksum);
+
+      block.clear();
+      blockRows = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flushBlock();
+        ByteBuffer end = ByteBuffer.allocate(BLOCK_HEADER_BYTES + 8);
+        end.putInt(0).putInt(0).putLong(totalRows).flip();
+        writeFully(end);
+        channel.force(true);
+      }
+      finally {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Reads a snapshot through a read-only memory mapping, verifying every block
+   * checksum before its rows are handed to the sink.
+   *
+   * @param sink receives one Object[] per row in {@link #INSERT_COLUMNS} order; the array is not reused
+   * @return the number of rows read
+   * @throws IOException if the file is truncated, of an unknown version or a checksum does not match
+   */
+  static long read(Path file, Consumer<Object[]> sink) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("snapshot " + file + " is too large to be mapped");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      try {
+        return read(buffer, sink);
+      }
+      catch (RuntimeException e) {
+        // BufferUnderflowException and friends mean the file is damaged
+        throw new IOException("snapshot " + file + " is corrupt", e);
+      }
+    }
+  }
+
+  private static long read(ByteBuffer buffer, Consumer<Object[]> sink) throws IOException {
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("not a user snapshot");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("unsupported snapshot version " + version);
+    }
+    buffer.getLong(); // creation time, informational only
+
+    CRC32C crc = new CRC32C();
+    long rows = 0;
+    while (true) {
+      int blockRows = buffer.getInt();
+      int length = buffer.getInt();
+      if (blockRows == 0) {
+        break;
+      }
+      ByteBuffer payload = buffer.slice();
+      payload.limit(length);
+      buffer.position(buffer.position() + length);
+
+      crc.reset();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != buffer.getInt()) {
+        throw new IOException("checksum mismatch in block after row " + rows);
+      }
+      for (int i = 0; i < blockRows; i++) {
+        sink.accept(readRow(payload));
+      }
+      rows += blockRows;
+    }
+    long expectedRows = buffer.getLong();
+    if (expectedRows != rows) {
+      throw new IOException("snapshot is incomplete, expected " + expectedRows + " rows but read " + rows);
+    }
+    return rows;
+  }
+
+  private static Object[] readRow(ByteBuffer payload) {
+    long id = payload.getLong();
+    String username = readString(payload);
+    String password = readString(payload);
+    byte[] token = new byte[16];
+    payload.get(token);
+    int status = payload.get();
+    long creationDate = payload.getLong();
+    long birthday = payload.getLong();
+    return new Object[] {id, username, password, token, status, new Timestamp(creationDate),
+            birthday == NO_DATE ? null : new Timestamp(birthday)};
+  }
+
+  private static String readString(ByteBuffer payload) {
+    byte[] bytes = new byte[payload.getInt()];
+    payload.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,208 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * User Snapshot Service
+ * The application runs on an in-memory H2 database, so all users are lost on a
+ * restart. When enabled, this service periodically dumps the USER table into a
+ * compact binary snapshot (see UserSnapshotCodec) and restores the latest one on
+ * startup.
+ * The restore runs once all singletons exist (the schema has been created) but
+ * before the web server starts, so no request is served from an empty table.
+ */
+@Service
+public class UserSnapshotService implements SmartInitializingSingleton {
+
+  private static final String PREFIX = "users-";
+  private static final String SUFFIX = ".snap";
+
+  private final Logger log = LoggerFactory.getLogger(UserSnapshotService.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final UserStatsService userStatsService;
+  private final boolean enabled;
+  private final Path directory;
+  private final int retain;
+
+  public UserSnapshotService(JdbcTemplate jdbcTemplate,
+                             UserStatsService userStatsService,
+                             @Value("${snapshot.enabled:false}") boolean enabled,
+                             @Value("${snapshot.directory:snapshots}") String directory,
+                             @Value("${snapshot.retain:2}") int retain) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.userStatsService = userStatsService;
+    this.enabled = enabled;
+    this.directory = Paths.get(directory);
+    this.retain = Math.max(1, retain);
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    if (!enabled) {
+      return;
+    }
+    // newest first; fall back to an older snapshot if the latest one is damaged
+    for (Path snapshot : listSnapshots()) {
+      try {
+        restore(snapshot);
+        return;
+      }
+      catch (IOException | DataAccessException e) {
+        log.warn("Could not restore users from {}", snapshot, e);
+        jdbcTemplate.update("DELETE FROM USER");
+      }
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${snapshot.interval-ms:300000}", initialDelayString = "${snapshot.interval-ms:300000}")
+  public void scheduledSnapshot() {
+    if (enabled) {
+      writeSnapshot();
+    }
+  }
+
+  @PreDestroy
+  public void shutdownSnapshot() {
+    if (enabled) {
+      writeSnapshot();
+    }
+  }
+
+  /**
+   * Writes the USER table to a new snapshot file. The file is written under a
+   * temporary name and moved into place once complete, so a crash never leaves
+   * a half written snapshot behind.
+   */
+  public synchronized Path writeSnapshot() {
+    long start = System.nanoTime();
+    Path target = directory.resolve(String.format("%s%013d%s", PREFIX, System.currentTimeMillis(), SUFFIX));
+    Path tmp = directory.resolve(target.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(directory);
+
+      long rows;
+      try (UserSnapshotCodec.Writer writer = new UserSnapshotCodec.Writer(tmp)) {
+        // soft deleted users are left out, a restore purges them
+        String select = "SELECT " + UserSnapshotCodec.INSERT_COLUMNS + " FROM USER WHERE deleted_at IS NULL";
+        jdbcTemplate.query(select, (RowCallbackHandler) rs -> {
+          try {
+            Timestamp birthday = rs.getTimestamp(7);
+            writer.append(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getBytes(4), rs.getInt(5),
+                    rs.getTimestamp(6).getTime(), birthday == null ? null : birthday.getTime());
+          }
+          catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        rows = writer.rows();
+      }
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+      pruneOldSnapshots();
+
+      log.info("Wrote snapshot of {} users to {} in {} ms", rows, target, (System.nanoTime() - start) / 1_000_000);
+      return target;
+    }
+    catch (IOException | UncheckedIOException | DataAccessException e) {
+      log.error("Writing the user snapshot failed", e);
+      deleteQuietly(tmp);
+      return null;
+    }
+  }
+
+  /**
+   * Bulk loads a snapshot with batched JDBC inserts and moves the id sequence
+   * past the restored ids. Only runs against an empty USER table.
+   */
+  void restore(Path snapshot) throws IOException {
+    Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USER", Integer.class);
+    if (existing != null && existing > 0) {
+      log.info("USER table already holds {} rows, not restoring {}", existing, snapshot);
+      return;
+    }
+    long start = System.nanoTime();
+    // birthday_day is derived from the birthday and not part of the snapshot
+    String insert = "INSERT INTO USER (" + UserSnapshotCodec.INSERT_COLUMNS + ", birthday_day)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    List<Object[]> batch = new ArrayList<>(UserSnapshotCodec.BLOCK_ROWS);
+    long[] maxId = {0};
+    long rows = UserSnapshotCodec.read(snapshot, row -> {
+      Object[] withBirthdayDay = Arrays.copyOf(row, row.length + 1);
+      withBirthdayDay[row.length] = User.birthdayDayOf((Date) row[6]);
+      batch.add(withBirthdayDay);
+      maxId[0] = Math.max(maxId[0], (Long) row[0]);
+      if (batch.size() == UserSnapshotCodec.BLOCK_ROWS) {
+        jdbcTemplate.batchUpdate(insert, batch);
+        batch.clear();
+      }
+    });
+    if (!batch.isEmpty()) {
+      jdbcTemplate.batchUpdate(insert, batch);
+    }
+    jdbcTemplate.execute("ALTER SEQUENCE hibernate_sequence RESTART WITH " + (maxId[0] + 1));
+    // the rows bypassed the UserService, so its counters have to be recounted
+    userStatsService.rebuild();
+
+    log.info("Restored {} users from {} in {} ms", rows, snapshot, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * @return the complete snapshots in the directory, newest first
+   */
+  List<Path> listSnapshots() {
+    List<Path> snapshots = new ArrayList<>();
+    if (!Files.isDirectory(directory)) {
+      return snapshots;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+      stream.forEach(snapshots::add);
+    }
+    catch (IOException e) {
+      log.warn("Could not list snapshots in {}", directory, e);
+    }
+    // the zero padded timestamp makes the names sort chronologically
+    snapshots.sort(Collections.reverseOrder());
+    return snapshots;
+  }
+
+  private void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    }
+    catch (IOException e) {
+      log.warn("Could not delete {}", file, e);
+    }
+  }
+
+  private void pruneOldSnapshots() throws IOException {
+    List<Path> snapshots = listSnapshots();
+    for (Path old : snapshots.subList(Math.min(retain, snapshots.size()), snapshots.size())) {
+      Files.deleteIfExists(old);
+    }
+  }
+}
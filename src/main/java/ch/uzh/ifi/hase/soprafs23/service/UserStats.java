@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+
+import java.time.Month;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Point in time copy of the counters held by the UserStatsService.
+ */
+public final class UserStats {
+
+  private final long total;
+  private final Map<UserStatus, Long> byStatus;
+  private final SortedMap<String, Long> signupsPerDay;
+  private final Map<Month, Long> birthdaysPerMonth;
+
+  UserStats(long total, Map<UserStatus, Long> byStatus, SortedMap<String, Long> signupsPerDay,
+            Map<Month, Long> birthdaysPerMonth) {
+    this.total = total;
+    this.byStatus = byStatus;
+    this.signupsPerDay = signupsPerDay;
+    this.birthdaysPerMonth = birthdaysPerMonth;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public Map<UserStatus, Long> getByStatus() {
+    return byStatus;
+  }
+
+  public SortedMap<String, Long> getSignupsPerDay() {
+    return signupsPerDay;
+  }
+
+  public Map<Month, Long> getBirthdaysPerMonth() {
+    return birthdaysPerMonth;
+  }
+}
@@ -0,0 +1,209 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * User Stats Service
+ * Keeps aggregate counters (users per status, signups per day, birthdays per
+ * month) in memory so dashboards don't have to pull all users and count them.
+ * The counters are built from the database once at startup and afterwards
+ * updated incrementally by the UserService on every mutation, once its
+ * transaction commits; reading them never touches the database. Days and
+ * months are taken in UTC, like the dates in the API.
+ */
+@Service
+public class UserStatsService implements SmartInitializingSingleton {
+
+  static final int MAX_DAYS = 366;
+
+  private final Logger log = LoggerFactory.getLogger(UserStatsService.class);
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private volatile Counters counters = new Counters();
+
+  public UserStatsService(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    rebuild();
+  }
+
+  /**
+   * recounts everything with a single pass over the USER table; only needed at
+   * startup or after rows were written around the UserService (snapshot restore)
+   */
+  public void rebuild() {
+    long start = System.nanoTime();
+    Counters rebuilt = new Counters();
+    UserStatus[] statuses = UserStatus.values();
+    jdbcTemplate.query("SELECT status, creation_date, birthday FROM USER WHERE deleted_at IS NULL", (RowCallbackHandler) rs -> {
+      Timestamp birthday = rs.getTimestamp(3);
+      rebuilt.add(statuses[rs.getInt(1)], rs.getTimestamp(2), birthday);
+    });
+    counters = rebuilt;
+    log.info("Rebuilt user stats for {} users in {} ms", rebuilt.total(),
+            (System.nanoTime() - start) / 1_000_000);
+  }
+
+  public void userCreated(User user) {
+    UserStatus status = user.getStatus();
+    Date creationDate = user.getCreation_date();
+    Date birthday = user.getBirthday();
+    afterCommit(() -> counters.add(status, creationDate, birthday));
+  }
+
+  /**
+   * takes a deleted user out of all counters, so they match a rebuild; inside
+   * a transaction only once it commits
+   */
+  public void userDeleted(User user) {
+    UserStatus status = user.getStatus();
+    Date creationDate = user.getCreation_date();
+    Date birthday = user.getBirthday();
+    afterCommit(() -> {
+      Counters current = counters;
+      if (status != null) {
+        current.byStatus.decrementAndGet(status.ordinal());
+      }
+      if (creationDate != null) {
+        LongAdder signups = current.signupsPerDay.get(creationDate.toInstant().atOffset(ZoneOffset.UTC).toLocalDate());
+        if (signups != null) {
+          signups.decrement();
+        }
+      }
+      if (birthday != null) {
+        current.birthdaysPerMonth.decrementAndGet(monthIndex(birthday));
+      }
+    });
+  }
+
+  /**
+   * @param users the number of rows the UPDATE actually changed
+   */
+  public void statusChanged(UserStatus from, UserStatus to, long users) {
+    if (from == to || users == 0) {
+      return;
+    }
+    afterCommit(() -> {
+      Counters current = counters;
+      if (from != null) {
+        current.byStatus.addAndGet(from.ordinal(), -users);
+      }
+      if (to != null) {
+        current.byStatus.addAndGet(to.ordinal(), users);
+      }
+    });
+  }
+
+  public void birthdayChanged(Date from, Date to) {
+    afterCommit(() -> {
+      Counters current = counters;
+      if (from != null) {
+        current.birthdaysPerMonth.decrementAndGet(monthIndex(from));
+      }
+      if (to != null) {
+        current.birthdaysPerMonth.incrementAndGet(monthIndex(to));
+      }
+    });
+  }
+
+  /**
+   * @param days number of days up to and including today to report signups for
+   */
+  public UserStats getStats(int days) {
+    Counters current = counters;
+    days = Math.max(1, Math.min(days, MAX_DAYS));
+
+    Map<UserStatus, Long> byStatus = new EnumMap<>(UserStatus.class);
+    for (UserStatus status : UserStatus.values()) {
+      byStatus.put(status, current.byStatus.get(status.ordinal()));
+    }
+    // ISO dates sort chronologically
+    SortedMap<String, Long> signupsPerDay = new TreeMap<>();
+    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    for (LocalDate day = today.minusDays(days - 1L); !day.isAfter(today); day = day.plusDays(1)) {
+      LongAdder signups = current.signupsPerDay.get(day);
+      signupsPerDay.put(day.toString(), signups == null ? 0L : signups.sum());
+    }
+    Map<Month, Long> birthdaysPerMonth = new EnumMap<>(Month.class);
+    for (Month month : Month.values()) {
+      birthdaysPerMonth.put(month, current.birthdaysPerMonth.get(month.ordinal()));
+    }
+    return new UserStats(current.total(), byStatus, signupsPerDay, birthdaysPerMonth);
+  }
+
+  /**
+   * applies a change to the counters once the current transaction commits, or
+   * right away outside of one, like the UserChangeLog; a rolled back change
+   * never reaches the counters
+   */
+  private static void afterCommit(Runnable change) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          change.run();
+        }
+      });
+    }
+    else {
+      change.run();
+    }
+  }
+
+  private static int monthIndex(Date date) {
+    return date.toInstant().atOffset(ZoneOffset.UTC).getMonthValue() - 1;
+  }
+
+  private static final class Counters {
+    final AtomicLongArray byStatus = new AtomicLongArray(UserStatus.values().length);
+    final ConcurrentHashMap<LocalDate, LongAdder> signupsPerDay = new ConcurrentHashMap<>();
+    final AtomicLongArray birthdaysPerMonth = new AtomicLongArray(12);
+
+    void add(UserStatus status, Date creationDate, Date birthday) {
+      if (status != null) {
+        byStatus.incrementAndGet(status.ordinal());
+      }
+      if (creationDate != null) {
+        LocalDate day = creationDate.toInstant().atOffset(ZoneOffset.UTC).toLocalDate();
+        signupsPerDay.computeIfAbsent(day, d -> new LongAdder()).increment();
+      }
+      if (birthday != null) {
+        birthdaysPerMonth.incrementAndGet(monthIndex(birthday));
+      }
+    }
+
+    long total() {
+      long total = 0;
+      for (int i = 0; i < byStatus.length(); i++) {
+        total += byStatus.get(i);
+      }
+      return total;
+    }
+  }
+}
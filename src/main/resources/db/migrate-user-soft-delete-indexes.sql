@@ -0,0 +1,11 @@
+-- Replaces the status, birthday and deleted_at indexes by ones led by DELETED_AT.
+-- Every query filters on DELETED_AT IS NULL, and H2 preferred the index on DELETED_AT
+-- alone, which matches every live user, over the status and birthday indexes.
+-- Only needed for a persistent database created before; ddl-auto=update adds the new
+-- indexes but leaves the old ones in place, and the default in-memory database is
+-- recreated by Hibernate on every start.
+DROP INDEX IF EXISTS IDX_USER_STATUS_ID;
+DROP INDEX IF EXISTS IDX_USER_BIRTHDAY_DAY;
+DROP INDEX IF EXISTS IDX_USER_DELETED_AT;
+CREATE INDEX IF NOT EXISTS IDX_USER_DELETED_AT_STATUS_ID ON USER (DELETED_AT, STATUS, ID);
+CREATE INDEX IF NOT EXISTS IDX_USER_DELETED_AT_BIRTHDAY_DAY ON USER (DELETED_AT, BIRTHDAY_DAY);
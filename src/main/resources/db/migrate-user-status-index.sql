@@ -0,0 +1,7 @@
+-- Replaces the index on USER.STATUS by one on (STATUS, ID), so a page of users with
+-- one status ordered by id is read from the index.
+-- Only needed for a persistent database created before; ddl-auto=update adds the new
+-- index but leaves the old one in place, and the default in-memory database is
+-- recreated by Hibernate on every start.
+DROP INDEX IF EXISTS IDX_USER_STATUS;
+CREATE INDEX IF NOT EXISTS IDX_USER_STATUS_ID ON USER (STATUS, ID);
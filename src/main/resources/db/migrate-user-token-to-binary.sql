@@ -0,0 +1,9 @@
+-- Converts USER.TOKEN from its 36 character string form to a 16 byte binary UUID.
+-- Only needed for a persistent database created before tokens were stored as binary;
+-- the default in-memory database is recreated by Hibernate on every start.
+ALTER TABLE USER ADD COLUMN TOKEN_BINARY BINARY(16);
+UPDATE USER SET TOKEN_BINARY = CAST(CAST(TOKEN AS UUID) AS BINARY(16));
+ALTER TABLE USER DROP COLUMN TOKEN;
+ALTER TABLE USER ALTER COLUMN TOKEN_BINARY RENAME TO TOKEN;
+ALTER TABLE USER ALTER COLUMN TOKEN SET NOT NULL;
+ALTER TABLE USER ADD CONSTRAINT UK_USER_TOKEN UNIQUE (TOKEN);
@@ -0,0 +1,94 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Disposable;
+
+import javax.annotation.PreDestroy;
+
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Reactive Configuration
+ * Activated with --spring.profiles.active=reactive, which also switches the
+ * application to a reactive (Netty) web server, see application-reactive.properties.
+ * The profile and its WebFlux and R2DBC dependencies live in the reactive
+ * source set, off the default classpath: ./gradlew bootRunReactive
+ * It serves GET /users and GET /users/{userid} from the non-blocking
+ * ReactiveUserHandler over R2DBC, and the user writes (sign up, login, logout,
+ * update, delete, token check) from the ReactiveUserWriteHandler, which runs
+ * the blocking UserService off the event loop. Both use the same in-memory
+ * database, the JDBC datasource for JPA and a pool of R2DBC connections.
+ * The annotated controllers, their exception advice and the servlet filters
+ * (timing, SQL statistics, cluster forwarding) are servlet-only beans and are
+ * not registered, so no blocking JPA call ever runs on an event loop thread.
+ * Expected failures get the same error body as on the servlet stack; other
+ * errors are answered by Boot's default error handler.
+ * The R2DBC connections are created here rather than auto-configured: Boot's
+ * R2DBC transaction manager would otherwise replace the JPA one. There is no
+ * ConnectionFactory bean either, the JDBC datasource backs off from one.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfiguration {
+
+  private ConnectionFactory connectionFactory;
+
+  /**
+   * Tomcat is on the classpath for the servlet stack and would otherwise be
+   * picked as the reactive server as well
+   */
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  @Bean
+  public DatabaseClient reactiveDatabaseClient(@Value("${reactive.r2dbc-url}") String url,
+                                               @Value("${spring.datasource.username:}") String username,
+                                               @Value("${spring.datasource.password:}") String password) {
+    // same in-memory database and credentials as the JDBC datasource
+    connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+            .option(ConnectionFactoryOptions.USER, username)
+            .option(ConnectionFactoryOptions.PASSWORD, password)
+            .build());
+    return DatabaseClient.create(connectionFactory);
+  }
+
+  @Bean
+  public RouterFunction<ServerResponse> reactiveUserRoutes(ReactiveUserHandler handler,
+                                                           ReactiveUserWriteHandler writeHandler) {
+    return route()
+            .GET("/users", handler::getUsers)
+            .GET("/users/{userid}", handler::getUser)
+            .POST("/users", writeHandler::createUser)
+            .PUT("/users/{userid}", writeHandler::updateUser)
+            .DELETE("/users/{userid}", writeHandler::deleteUser)
+            .POST("/users/{userid}/edit", writeHandler::matchToken)
+            .POST("/login", writeHandler::login)
+            .PUT("/login", writeHandler::logout)
+            .onError(ExpectedFailure.class, (e, request) -> ServerResponse.status(e.getStatus())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(e.toResponseBody(request.path())))
+            .build();
+  }
+
+  @PreDestroy
+  public void closeConnections() {
+    if (connectionFactory instanceof Disposable) {
+      // the pool, closed with the context like the JDBC datasource
+      ((Disposable) connectionFactory).dispose();
+    }
+  }
+}
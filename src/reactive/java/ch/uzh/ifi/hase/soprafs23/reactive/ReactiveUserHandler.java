@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Reactive User Handler
+ * WebFlux handlers for GET /users and GET /users/{userid} in the reactive
+ * profile, with the same parameters and answers as the UserController.
+ * The list is streamed: rows are only fetched as fast as the client reads
+ * them, and with Accept: application/x-ndjson every user is written as soon as
+ * it is read instead of as one JSON array.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveUserHandler {
+
+  static final int MAX_PAGE_SIZE = 1000;
+
+  // rows requested from the database ahead of the client
+  private static final int ROW_PREFETCH = 256;
+
+  private final ReactiveUserRepository reactiveUserRepository;
+
+  public ReactiveUserHandler(ReactiveUserRepository reactiveUserRepository) {
+    this.reactiveUserRepository = reactiveUserRepository;
+  }
+
+  public Mono<ServerResponse> getUsers(ServerRequest request) {
+    Optional<String> status = request.queryParam("status");
+    Optional<String> page = request.queryParam("page");
+    Flux<UserGetDTO> users;
+    if (status.isEmpty() && page.isEmpty()) {
+      users = reactiveUserRepository.findAll();
+    }
+    else {
+      int pageNumber;
+      int size;
+      UserStatus userStatus;
+      try {
+        pageNumber = Integer.parseInt(page.orElse("0"));
+        size = Integer.parseInt(request.queryParam("size").orElse("100"));
+        userStatus = status.map(UserStatus::valueOf).orElse(null);
+      }
+      catch (IllegalArgumentException e) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Error: invalid status, page or size"));
+      }
+      if (pageNumber < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Error: page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE));
+      }
+      users = reactiveUserRepository.findPage(userStatus, pageNumber, size);
+    }
+
+    MediaType contentType = request.headers().accept().contains(MediaType.APPLICATION_NDJSON)
+            ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+    return ServerResponse.ok().contentType(contentType).body(users.limitRate(ROW_PREFETCH), UserGetDTO.class);
+  }
+
+  public Mono<ServerResponse> getUser(ServerRequest request) {
+    Long id = UserService.parseUserId(request.pathVariable("userid"));
+    if (id == null) {
+      return Mono.error(ExpectedFailure::idNotFound);
+    }
+    return reactiveUserRepository.findById(id)
+            .switchIfEmpty(Mono.error(ExpectedFailure::userNotFound))
+            .flatMap(user -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(user));
+  }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import io.r2dbc.spi.Row;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Reactive User Repository
+ * Non-blocking, read-only access to the USER table over R2DBC. Rows are mapped
+ * straight to UserGetDTO; the JPA entity is not involved, so soft deleted rows
+ * are excluded here explicitly.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveUserRepository {
+
+  private static final String SELECT = "SELECT id, username, status, creation_date, birthday FROM USER"
+          + " WHERE deleted_at IS NULL";
+
+  private static final UserStatus[] STATUSES = UserStatus.values();
+
+  private final DatabaseClient databaseClient;
+
+  public ReactiveUserRepository(DatabaseClient databaseClient) {
+    this.databaseClient = databaseClient;
+  }
+
+  public Flux<UserGetDTO> findAll() {
+    return databaseClient.sql(SELECT + " ORDER BY id")
+            .map((row, metadata) -> toUserGetDTO(row))
+            .all();
+  }
+
+  /**
+   * @param status null for all users
+   */
+  public Flux<UserGetDTO> findPage(UserStatus status, int page, int size) {
+    String where = status == null ? "" : " AND status = :status";
+    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(SELECT + where + " ORDER BY id LIMIT :size OFFSET :offset")
+            .bind("size", size)
+            .bind("offset", (long) page * size);
+    if (status != null) {
+      spec = spec.bind("status", status.ordinal());
+    }
+    return spec.map((row, metadata) -> toUserGetDTO(row)).all();
+  }
+
+  public Mono<UserGetDTO> findById(long id) {
+    return databaseClient.sql(SELECT + " AND id = :id")
+            .bind("id", id)
+            .map((row, metadata) -> toUserGetDTO(row))
+            .one();
+  }
+
+  private static UserGetDTO toUserGetDTO(Row row) {
+    UserGetDTO user = new UserGetDTO();
+    user.setId(row.get("id", Long.class));
+    user.setUsername(row.get("username", String.class));
+    user.setStatus(STATUSES[row.get("status", Integer.class)]);
+    user.setCreation_date(toDate(row.get("creation_date", LocalDateTime.class)));
+    user.setBirthday(toDate(row.get("birthday", LocalDateTime.class)));
+    return user;
+  }
+
+  private static Date toDate(LocalDateTime timestamp) {
+    // JPA wrote the java.util.Date in the JVM time zone
+    return timestamp == null ? null : Date.from(timestamp.atZone(ZoneId.systemDefault()).toInstant());
+  }
+}
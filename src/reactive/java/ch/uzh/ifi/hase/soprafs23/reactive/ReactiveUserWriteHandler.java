@@ -0,0 +1,118 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs23.service.IdempotencyStore;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+
+/**
+ * Reactive User Write Handler
+ * WebFlux handlers for the user writes in the reactive profile, with the same
+ * paths, bodies and answers as the UserController. The reads are served from
+ * the same process's database, so clients sign up, log in and edit themselves
+ * on the reactive profile without a servlet instance next to it.
+ * The writes go through the blocking UserService (JPA, row locks, the change
+ * log), so every call runs on the bounded elastic scheduler and never on an
+ * event loop thread. Only the body is read on the event loop.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveUserWriteHandler {
+
+  static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+  static final String BEARER = "Bearer ";
+
+  private final UserService userService;
+  private final IdempotencyStore idempotencyStore;
+
+  public ReactiveUserWriteHandler(UserService userService, IdempotencyStore idempotencyStore) {
+    this.userService = userService;
+    this.idempotencyStore = idempotencyStore;
+  }
+
+  public Mono<ServerResponse> createUser(ServerRequest request) {
+    String idempotencyKey = request.headers().firstHeader(IDEMPOTENCY_KEY);
+    String remoteAddress = request.remoteAddress().map(InetSocketAddress::getHostString).orElse("");
+    return body(request, UserPostDTO.class)
+            .flatMap(userPostDTO -> call(() -> {
+              // a retry from the same client with the same key and body gets the original answer replayed
+              byte[] fingerprint = IdempotencyStore.fingerprint(userPostDTO.getUsername(), userPostDTO.getPassword());
+              return idempotencyStore.execute("POST /users " + remoteAddress, idempotencyKey, fingerprint, () -> {
+                User createdUser = userService.createUser(DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO));
+                return DTOMapper.INSTANCE.convertUserToUserTokenDTO(createdUser);
+              });
+            }))
+            .flatMap(token -> ServerResponse.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(token));
+  }
+
+  public Mono<ServerResponse> updateUser(ServerRequest request) {
+    String userid = request.pathVariable("userid");
+    return body(request, UserPutDTO.class)
+            .flatMap(userPutDTO -> run(() -> userService.updateUser(
+                    DTOMapper.INSTANCE.convertUserPutDTOtoUser(userPutDTO), userid)))
+            .then(ServerResponse.noContent().build());
+  }
+
+  public Mono<ServerResponse> deleteUser(ServerRequest request) {
+    String userid = request.pathVariable("userid");
+    String authorization = request.headers().firstHeader(HttpHeaders.AUTHORIZATION);
+    String token = authorization != null && authorization.startsWith(BEARER)
+            ? authorization.substring(BEARER.length()) : authorization;
+    return run(() -> userService.deleteUser(userid, token))
+            .then(ServerResponse.noContent().build());
+  }
+
+  public Mono<ServerResponse> matchToken(ServerRequest request) {
+    String userid = request.pathVariable("userid");
+    return body(request, UserTokenDTO.class)
+            .flatMap(userTokenDTO -> run(() -> userService.matchToken(userTokenDTO.getToken(), userid)))
+            .then(ServerResponse.ok().build());
+  }
+
+  /**
+   * Not idempotent on purpose, like POST /login on the servlet stack.
+   */
+  public Mono<ServerResponse> login(ServerRequest request) {
+    return body(request, UserPostDTO.class)
+            .flatMap(userPostDTO -> call(() -> DTOMapper.INSTANCE.convertUserToUserTokenDTO(
+                    userService.validateUser(DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO)))))
+            .flatMap(token -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(token));
+  }
+
+  public Mono<ServerResponse> logout(ServerRequest request) {
+    return body(request, UserTokenDTO.class)
+            .flatMap(userTokenDTO -> run(() -> userService.logout(userTokenDTO.getToken())))
+            .then(ServerResponse.ok().build());
+  }
+
+  private static <T> Mono<T> body(ServerRequest request, Class<T> type) {
+    return request.bodyToMono(type)
+            .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Error: The request body is missing")));
+  }
+
+  private <T> Mono<T> call(Callable<T> write) {
+    return Mono.fromCallable(write).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private Mono<Void> run(Runnable write) {
+    return Mono.fromRunnable(write).subscribeOn(Schedulers.boundedElastic()).then();
+  }
+}
@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+public class ClusterForwardingFilterTest {
+
+  @Test
+  public void ownerUnreachable_servedHereWithTheSameBody() throws Exception {
+    UserDirectory directory = new UserDirectory(null, new UserChangeLog(16), null, true, "http://a",
+            "http://a,http://b", 16, 1);
+    ClusterClient clusterClient = Mockito.mock(ClusterClient.class);
+    Mockito.when(clusterClient.forward(anyString(), anyString(), anyString(), anyString(), any(), any(), any()))
+            .thenThrow(new IOException("Connection refused"));
+    long other = 1;
+    while (directory.owns(other)) {
+      other++;
+    }
+    byte[] body = "{\"token\":\"abc\"}".getBytes(StandardCharsets.UTF_8);
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users/" + other + "/edit");
+    request.setContentType("application/json");
+    request.setContent(body);
+    AtomicReference<byte[]> servedBody = new AtomicReference<>();
+
+    new ClusterForwardingFilter(directory, clusterClient).doFilter(request, new MockHttpServletResponse(),
+            (req, res) -> servedBody.set(req.getInputStream().readAllBytes()));
+
+    Mockito.verify(clusterClient).forward(eq("http://b"), eq("http://a"), eq("POST"), eq("/users/" + other + "/edit"),
+            eq("application/json"), isNull(), eq(body));
+    assertArrayEquals(body, servedBody.get());
+  }
+}
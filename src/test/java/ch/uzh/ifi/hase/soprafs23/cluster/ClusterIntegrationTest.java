@@ -0,0 +1,168 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import ch.uzh.ifi.hase.soprafs23.Application;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs three nodes on localhost in this JVM, sharing one in-memory database,
+ * and checks that every user is cached on exactly its owner, that requests to
+ * other nodes are forwarded, that changes made on any node reach the owner,
+ * that the partitions are rebalanced when a node leaves the ring, and how the
+ * per node state behaves.
+ */
+public class ClusterIntegrationTest {
+
+  private static final int NODES = 3;
+  private static final int USERS = 30;
+  private static final String ADMIN_TOKEN = "cluster-test-token";
+
+  private final HttpClient client = HttpClient.newHttpClient();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+  private final List<String> nodes = new ArrayList<>();
+
+  @AfterEach
+  public void stopNodes() {
+    contexts.forEach(ConfigurableApplicationContext::close);
+  }
+
+  @Test
+  public void usersArePartitionedForwardedAndRebalanced() throws Exception {
+    for (int i = 0; i < NODES; i++) {
+      nodes.add("http://localhost:" + freePort());
+    }
+    String database = "jdbc:h2:mem:cluster-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+    for (String node : nodes) {
+      // arguments rather than builder properties, which application.properties (server.port=8080) would override
+      contexts.add(new SpringApplicationBuilder(Application.class).run(
+              "--server.port=" + URI.create(node).getPort(),
+              "--spring.datasource.url=" + database,
+              "--spring.jpa.hibernate.ddl-auto=update",
+              "--warmup.enabled=false",
+              "--cluster.enabled=true",
+              "--cluster.self=" + node,
+              "--cluster.admin-token=" + ADMIN_TOKEN,
+              "--cluster.nodes=" + String.join(",", nodes)));
+    }
+
+    for (int i = 0; i < USERS; i++) {
+      send(nodes.get(0), "POST", "/users", "{\"username\":\"cluster" + i + "\",\"password\":\"pw\"}", 201);
+    }
+    Map<Long, String> usernames = new HashMap<>();
+    for (JsonNode user : send(nodes.get(0), "GET", "/users", null, 200)) {
+      usernames.put(user.path("id").asLong(), user.path("username").asText());
+    }
+    assertEquals(USERS, usernames.size());
+
+    // per node state: the stats of another node catch up on the next recount, the change feed is off
+    assertEquals(0, send(nodes.get(1), "GET", "/users/stats", null, 200).path("total").asLong());
+    contexts.get(1).getBean(ClusterStatsRefresher.class).refresh();
+    assertEquals(USERS, send(nodes.get(1), "GET", "/users/stats", null, 200).path("total").asLong());
+    send(nodes.get(0), "GET", "/users/changes", null, 404);
+
+    // every node answers for every user, but only the owner holds it
+    for (Map.Entry<Long, String> user : usernames.entrySet()) {
+      for (String node : nodes) {
+        assertEquals(user.getValue(), send(node, "GET", "/users/" + user.getKey(), null, 200).path("username").asText());
+      }
+      String owner = directory(0).ownerOf(user.getKey());
+      for (int i = 0; i < NODES; i++) {
+        assertEquals(nodes.get(i).equals(owner), directory(i).isCached(user.getKey()));
+      }
+    }
+
+    // a change made on a node that does not own the user reaches the owner
+    long id = usernames.keySet().iterator().next();
+    String owner = directory(0).ownerOf(id);
+    String other = nodes.stream().filter(node -> !node.equals(owner)).findFirst().orElseThrow();
+    send(other, "PUT", "/users/" + id, "{\"username\":\"renamed\"}", 204);
+    assertEquals("renamed", awaitUsername(owner, id, "renamed"));
+
+    // the token check is forwarded as well
+    String token = send(other, "POST", "/login", "{\"username\":\"renamed\",\"password\":\"pw\"}", 200)
+            .path("token").asText();
+    send(other, "POST", "/users/" + id + "/edit", "{\"token\":\"" + token + "\"}", 200);
+    send(other, "POST", "/users/" + id + "/edit", "{\"token\":\"" + new UUID(0, 0) + "\"}", 401);
+
+    // the last node leaves: the others take over its users
+    String leaving = nodes.get(NODES - 1);
+    List<String> remaining = nodes.subList(0, NODES - 1);
+    String ring = objectMapper.writeValueAsString(remaining);
+    // membership changes need the admin token and may only name configured nodes
+    send(remaining.get(0), "PUT", "/internal/cluster/nodes", ring, null, 403);
+    send(remaining.get(0), "POST", "/internal/cluster/invalidate/" + id, null, "wrong", 403);
+    send(remaining.get(0), "PUT", "/internal/cluster/nodes", "[\"http://attacker.example\"]", ADMIN_TOKEN, 400);
+    for (String node : remaining) {
+      send(node, "PUT", "/internal/cluster/nodes", ring, ADMIN_TOKEN, 200);
+    }
+    contexts.remove(NODES - 1).close();
+    for (long userId : usernames.keySet()) {
+      String newOwner = directory(0).ownerOf(userId);
+      assertNotEquals(leaving, newOwner);
+      assertEquals(newOwner, directory(1).ownerOf(userId));
+      assertTrue(directory(remaining.indexOf(newOwner)).isCached(userId));
+      send(remaining.get(0), "GET", "/users/" + userId, null, 200);
+      send(remaining.get(1), "GET", "/users/" + userId, null, 200);
+    }
+  }
+
+  private UserDirectory directory(int node) {
+    return contexts.get(node).getBean(UserDirectory.class);
+  }
+
+  private String awaitUsername(String node, long id, String expected) throws Exception {
+    String username = null;
+    // the invalidation is sent asynchronously
+    for (int attempt = 0; attempt < 50 && !expected.equals(username); attempt++) {
+      Thread.sleep(100);
+      username = send(node, "GET", "/users/" + id, null, 200).path("username").asText();
+    }
+    return username;
+  }
+
+  private JsonNode send(String node, String method, String path, String json, int expectedStatus) throws Exception {
+    return send(node, method, path, json, null, expectedStatus);
+  }
+
+  private JsonNode send(String node, String method, String path, String json, String adminToken, int expectedStatus)
+          throws Exception {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + path)).header("Accept", "application/json");
+    if (adminToken != null) {
+      request.header("X-Admin-Token", adminToken);
+    }
+    if (json != null) {
+      request.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(json));
+    }
+    else {
+      request.method(method, HttpRequest.BodyPublishers.noBody());
+    }
+    HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    assertEquals(expectedStatus, response.statusCode(), method + " " + node + path + ": " + response.body());
+    return response.body().isEmpty() ? objectMapper.nullNode() : objectMapper.readTree(response.body());
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package ch.uzh.ifi.hase.soprafs23.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsistentHashRingTest {
+
+  private static final List<String> NODES = List.of("http://a:8080", "http://b:8080", "http://c:8080");
+  private static final int IDS = 30_000;
+
+  @Test
+  public void ownerOf_emptyRing_null() {
+    assertNull(new ConsistentHashRing(List.of(), 128).ownerOf(1L));
+  }
+
+  @Test
+  public void ownerOf_independentOfNodeOrder() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+    ConsistentHashRing reversed = new ConsistentHashRing(List.of(NODES.get(2), NODES.get(1), NODES.get(0)), 128);
+
+    for (long id = 1; id <= 1000; id++) {
+      assertEquals(ring.ownerOf(id), reversed.ownerOf(id));
+    }
+  }
+
+  @Test
+  public void ownerOf_spreadsIdsEvenly() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES, 128);
+    Map<String, Integer> owned = new HashMap<>();
+    for (long id = 1; id <= IDS; id++) {
+      owned.merge(ring.ownerOf(id), 1, Integer::sum);
+    }
+
+    assertEquals(NODES.size(), owned.size());
+    for (int count : owned.values()) {
+      // within 25% of an even share
+      assertTrue(Math.abs(count - IDS / NODES.size()) < IDS / NODES.size() / 4, owned.toString());
+    }
+  }
+
+  @Test
+  public void ownerOf_removingNode_onlyMovesItsIds() {
+    ConsistentHashRing before = new ConsistentHashRing(NODES, 128);
+    ConsistentHashRing after = new ConsistentHashRing(NODES.subList(0, 2), 128);
+
+    for (long id = 1; id <= IDS; id++) {
+      String owner = before.ownerOf(id);
+      if (!owner.equals(NODES.get(2))) {
+        assertEquals(owner, after.ownerOf(id));
+      }
+    }
+  }
+}
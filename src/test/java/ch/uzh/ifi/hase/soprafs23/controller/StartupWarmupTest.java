@@ -0,0 +1,99 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.cluster.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.service.HotUserTracker;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupWarmupTest {
+
+  @Mock
+  private UserService userService;
+
+  @Mock
+  private UserRepository userRepository;
+
+  private UserJsonCache userJsonCache;
+
+  private HotUserTracker hotUserTracker;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    UserChangeLog changeLog = new UserChangeLog(16);
+    userJsonCache = new UserJsonCache(new ObjectMapper(), changeLog,
+            new UserDirectory(null, changeLog, null, false, "", "", 1, 1), 100);
+    hotUserTracker = new HotUserTracker(4096, 10, null);
+
+    User user = new User();
+    user.setId(7L);
+    user.setUsername("hot");
+    user.setStatus(UserStatus.ONLINE);
+    user.setCreation_date(new Date());
+    Mockito.when(userService.getUsers(UserStatus.ONLINE, 0, 10)).thenReturn(Collections.singletonList(user));
+    Mockito.when(userService.getUserById("7")).thenReturn(user);
+  }
+
+  private StartupWarmup warmup(long budgetMillis, int rounds) {
+    return new StartupWarmup(userService, userRepository, userJsonCache, hotUserTracker, new ObjectMapper(), true,
+            budgetMillis, 10, rounds);
+  }
+
+  @Test
+  public void run_exercisesReadPathsAndFillsCache() {
+    warmup(10_000, 3).run(new DefaultApplicationArguments());
+
+    Mockito.verify(userService, Mockito.times(3)).getUsers(UserStatus.ONLINE, 0, 10);
+    Mockito.verify(userRepository, Mockito.times(3)).findByUsername("hot");
+    Mockito.verify(userService, Mockito.times(3)).getUpcomingBirthdays(7);
+    assertEquals(1, userJsonCache.size());
+  }
+
+  @Test
+  public void run_warmsTrackedHotUsersFirstWithoutCountingThem() {
+    User tracked = new User();
+    tracked.setId(3L);
+    tracked.setUsername("tracked");
+    tracked.setStatus(UserStatus.OFFLINE);
+    tracked.setCreation_date(new Date());
+    Mockito.when(userService.getUserById("3")).thenReturn(tracked);
+    hotUserTracker.record(3L);
+
+    warmup(10_000, 1).run(new DefaultApplicationArguments());
+
+    Mockito.verify(userRepository).findByUsername("tracked");
+    Mockito.verify(userRepository).findByUsername("hot");
+    assertEquals(2, userJsonCache.size());
+    assertEquals(List.of(3L), hotUserTracker.topIds(10));
+    assertEquals(1, hotUserTracker.estimate(3L));
+  }
+
+  @Test
+  public void run_zeroBudget_doesNothing() {
+    warmup(0, 3).run(new DefaultApplicationArguments());
+
+    Mockito.verifyNoInteractions(userService, userRepository);
+  }
+
+  @Test
+  public void warmupRound_pastDeadline_stopsEarly() {
+    assertFalse(warmup(10_000, 1).warmupRound(System.nanoTime() - 1));
+    Mockito.verify(userRepository, Mockito.never()).findByUsername("hot");
+  }
+}
@@ -1,34 +1,52 @@
 package ch.uzh.ifi.hase.soprafs23.controller;
 
+import ch.uzh.ifi.hase.soprafs23.cluster.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPutDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
+import ch.uzh.ifi.hase.soprafs23.service.HotUserTracker;
+import ch.uzh.ifi.hase.soprafs23.service.IdempotencyStore;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import ch.uzh.ifi.hase.soprafs23.service.SessionActivityTracker;
 import ch.uzh.ifi.hase.soprafs23.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
 import java.text.SimpleDateFormat;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -39,14 +57,34 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * This tests if the UserController works.
  */
 @WebMvcTest(UserController.class)
+@Import({IdempotencyStore.class, UserJsonCache.class, UserChangeLog.class, HotUserTracker.class,
+        UserGetDTOConverter.class, SessionActivityTracker.class})
 public class UserControllerTest {
 
   @Autowired
   private MockMvc mockMvc;
 
+  @Autowired
+  private UserJsonCache userJsonCache;
+
   @MockBean
   private UserService userService;
 
+  @MockBean
+  private UserDirectory userDirectory;
+
+  @BeforeEach
+  public void ownAllUsers() {
+    // as without cluster.enabled, where this node owns every user
+    given(userDirectory.owns(anyLong())).willReturn(true);
+  }
+
+  @AfterEach
+  public void clearCache() {
+    // the application context (and the cache) is shared between the tests
+    userJsonCache.clear();
+  }
+
   @Test
   public void givenUsers_whenGetUsers_thenReturnJsonArray() throws Exception {
     Date date = new Date();
@@ -80,6 +118,25 @@ public class UserControllerTest {
         .andExpect(jsonPath("$[0].status", is(user.getStatus().toString())));
   }
 
+  @Test
+  public void givenStatus_whenGetUsers_thenReturnPageOfUsers() throws Exception {
+    User user = new User();
+    user.setId(1L);
+    user.setCreation_date(new Date());
+    user.setUsername("firstname@lastname");
+    user.setStatus(UserStatus.ONLINE);
+
+    given(userService.getUsers(UserStatus.ONLINE, 0, 50)).willReturn(Collections.singletonList(user));
+
+    mockMvc.perform(get("/users").param("status", "ONLINE").param("size", "50"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].status", is("ONLINE")));
+
+    mockMvc.perform(get("/users").param("status", "ONLINE").param("size", "0"))
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   public void createUser_validInput_userCreated() throws Exception {
     // init new User
@@ -87,7 +144,7 @@ public class UserControllerTest {
     user.setId(1L);
     user.setPassword("testPassword");
     user.setUsername("testUsername");
-    user.setToken("1");
+    user.setToken(UUID.randomUUID());
     user.setStatus(UserStatus.ONLINE);
 
     // init corresponding UserPostDTO
@@ -105,7 +162,113 @@ public class UserControllerTest {
     // then -> UserTokenDTO is returned
     mockMvc.perform(postRequest)
         .andExpect(status().isCreated())
-        .andExpect(jsonPath("$.token", is(user.getToken())));
+        .andExpect(jsonPath("$.token", is(user.getToken().toString())));
+  }
+
+  @Test
+  public void createUser_retryWithSameIdempotencyKey_replaysResponse() throws Exception {
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUsername");
+    user.setToken(UUID.randomUUID());
+    user.setStatus(UserStatus.ONLINE);
+
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setPassword("testPassword");
+    userPostDTO.setUsername("testUsername");
+
+    given(userService.createUser(Mockito.any())).willReturn(user);
+
+    MockHttpServletRequestBuilder postRequest = post("/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .header("Idempotency-Key", "retry-1")
+        .content(asJsonString(userPostDTO));
+
+    mockMvc.perform(postRequest).andExpect(status().isCreated());
+    mockMvc.perform(postRequest)
+        .andExpect(status().isCreated())
+        .andExpect(jsonPath("$.token", is(user.getToken().toString())));
+
+    // the retry is answered from the store
+    Mockito.verify(userService, Mockito.times(1)).createUser(Mockito.any());
+
+    // same key with a different body is rejected
+    userPostDTO.setUsername("otherUsername");
+    mockMvc.perform(post("/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .header("Idempotency-Key", "retry-1")
+        .content(asJsonString(userPostDTO)))
+        .andExpect(status().isUnprocessableEntity());
+  }
+
+  @Test
+  public void createUser_sameIdempotencyKeyFromOtherClient_runsAgain() throws Exception {
+    User user = new User();
+    user.setId(1L);
+    user.setToken(UUID.randomUUID());
+
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setPassword("testPassword");
+    userPostDTO.setUsername("testUsername");
+
+    given(userService.createUser(Mockito.any())).willReturn(user);
+
+    for (String client : new String[] {"10.0.0.1", "10.0.0.2"}) {
+      mockMvc.perform(post("/users")
+          .contentType(MediaType.APPLICATION_JSON)
+          .header("Idempotency-Key", "shared-key")
+          .with(request -> {
+            request.setRemoteAddr(client);
+            return request;
+          })
+          .content(asJsonString(userPostDTO)))
+          .andExpect(status().isCreated());
+    }
+
+    // keys are scoped per client, the second client's request is not a replay
+    Mockito.verify(userService, Mockito.times(2)).createUser(Mockito.any());
+  }
+
+  @Test
+  public void login_withIdempotencyKey_isNeverReplayed() throws Exception {
+    User user = new User();
+    user.setId(1L);
+    user.setToken(UUID.randomUUID());
+
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setPassword("testPassword");
+    userPostDTO.setUsername("testUsername");
+
+    given(userService.validateUser(Mockito.any())).willReturn(user);
+
+    MockHttpServletRequestBuilder loginRequest = post("/login")
+        .contentType(MediaType.APPLICATION_JSON)
+        .header("Idempotency-Key", "login-1")
+        .content(asJsonString(userPostDTO));
+    mockMvc.perform(loginRequest).andExpect(status().isOk());
+    mockMvc.perform(loginRequest).andExpect(status().isOk());
+
+    // every login checks the credentials again
+    Mockito.verify(userService, Mockito.times(2)).validateUser(Mockito.any());
+  }
+
+  @Test
+  public void getChanges_returnsChangesAfterSince() throws Exception {
+    UserChangeLog changeLog = new UserChangeLog(16);
+    changeLog.record(UserChangeType.CREATED, 1L);
+    changeLog.record(UserChangeType.LOGGED_OUT, 1L);
+
+    given(userService.getChanges(1L, 50)).willReturn(changeLog.since(1L, 50));
+
+    mockMvc.perform(get("/users/changes").param("since", "1").param("limit", "50"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].seq", is(2)))
+        .andExpect(jsonPath("$[0].type", is("LOGGED_OUT")))
+        .andExpect(jsonPath("$[0].userId", is(1)));
+
+    mockMvc.perform(get("/users/changes").param("since", "-1"))
+        .andExpect(status().isBadRequest());
   }
 
   // new
@@ -118,7 +281,7 @@ public class UserControllerTest {
       user.setId(Long.parseLong(id));
       user.setPassword("testPassword");
       user.setUsername("testUsername");
-      user.setToken("1");
+      user.setToken(UUID.randomUUID());
       user.setStatus(UserStatus.ONLINE);
       user.setCreation_date(cd);
 
@@ -143,6 +306,118 @@ public class UserControllerTest {
               .andExpect(jsonPath("$.birthday", is(user.getBirthday())));
   }
 
+  @Test
+  public void getUsers_acceptCborOrSmile_binaryBody() throws Exception {
+      User user = new User();
+      user.setId(1L);
+      user.setUsername("testUsername");
+      user.setStatus(UserStatus.ONLINE);
+      user.setCreation_date(new Date());
+      given(userService.getUsers()).willReturn(Collections.singletonList(user));
+
+      MvcResult cbor = mockMvc.perform(get("/users").accept(MediaType.APPLICATION_CBOR))
+              .andExpect(status().isOk())
+              .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+              .andReturn();
+      JsonNode cborUsers = new ObjectMapper(new CBORFactory()).readTree(cbor.getResponse().getContentAsByteArray());
+      assertEquals("testUsername", cborUsers.get(0).get("username").asText());
+      assertEquals("ONLINE", cborUsers.get(0).get("status").asText());
+
+      MvcResult smile = mockMvc.perform(get("/users").accept("application/x-jackson-smile"))
+              .andExpect(status().isOk())
+              .andExpect(content().contentTypeCompatibleWith("application/x-jackson-smile"))
+              .andReturn();
+      JsonNode smileUsers = new ObjectMapper(new SmileFactory()).readTree(smile.getResponse().getContentAsByteArray());
+      assertEquals(1L, smileUsers.get(0).get("id").asLong());
+
+      // JSON stays the default
+      mockMvc.perform(get("/users").accept(MediaType.ALL))
+              .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+  }
+
+  @Test
+  public void getUser_secondRequest_servedFromCache() throws Exception {
+      User user = new User();
+      user.setId(1L);
+      user.setUsername("cachedUser");
+      user.setStatus(UserStatus.ONLINE);
+      user.setCreation_date(new Date());
+      given(userService.getUserById("1")).willReturn(user);
+
+      mockMvc.perform(get("/users/1")).andExpect(status().isOk())
+              .andExpect(jsonPath("$.username", is("cachedUser")));
+      mockMvc.perform(get("/users/1")).andExpect(status().isOk())
+              .andExpect(jsonPath("$.username", is("cachedUser")));
+
+      Mockito.verify(userService, Mockito.times(1)).getUserById("1");
+  }
+
+  @Test
+  public void getUser_cbor_mappedWithoutCache() throws Exception {
+      User user = new User();
+      user.setId(1L);
+      user.setUsername("cborUser");
+      user.setStatus(UserStatus.ONLINE);
+      user.setCreation_date(new Date());
+      given(userService.getUserById("1")).willReturn(user);
+
+      MvcResult cbor = mockMvc.perform(get("/users/1").accept(MediaType.APPLICATION_CBOR))
+              .andExpect(status().isOk())
+              .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+              .andReturn();
+
+      JsonNode cborUser = new ObjectMapper(new CBORFactory()).readTree(cbor.getResponse().getContentAsByteArray());
+      assertEquals("cborUser", cborUser.get("username").asText());
+  }
+
+  @Test
+  public void getUser_malformedId_notFound() throws Exception {
+      mockMvc.perform(get("/users/abc"))
+              .andExpect(status().isNotFound())
+              .andExpect(jsonPath("$.message", is(ExpectedFailure.idNotFound().getReason())));
+  }
+
+  @Test
+  public void deleteUser_noContent() throws Exception {
+      String token = UUID.randomUUID().toString();
+
+      mockMvc.perform(delete("/users/1").header("Authorization", "Bearer " + token)).andExpect(status().isNoContent());
+      mockMvc.perform(delete("/users/2").header("Authorization", token)).andExpect(status().isNoContent());
+
+      Mockito.verify(userService).deleteUser("1", token);
+      Mockito.verify(userService).deleteUser("2", token);
+  }
+
+  @Test
+  public void deleteUser_withoutToken_unauthorized() throws Exception {
+      Mockito.doThrow(ExpectedFailure.tokenMismatch()).when(userService).deleteUser("1", null);
+
+      mockMvc.perform(delete("/users/1"))
+              .andExpect(status().isUnauthorized())
+              .andExpect(jsonPath("$.message", is(ExpectedFailure.tokenMismatch().getReason())));
+  }
+
+  @Test
+  public void deleteUser_unknownId_notFound() throws Exception {
+      Mockito.doThrow(ExpectedFailure.userNotFound()).when(userService).deleteUser("99", "token");
+
+      mockMvc.perform(delete("/users/99").header("Authorization", "token")).andExpect(status().isNotFound());
+  }
+
+  @Test
+  public void getUser_unknownId_returnsNotFoundBody() throws Exception {
+      given(userService.getUserById("99")).willThrow(ExpectedFailure.userNotFound());
+
+      MockHttpServletRequestBuilder getRequest = get("/users/99")
+              .contentType(MediaType.APPLICATION_JSON);
+
+      mockMvc.perform(getRequest)
+              .andExpect(status().isNotFound())
+              .andExpect(jsonPath("$.status", is(404)))
+              .andExpect(jsonPath("$.message", is(ExpectedFailure.userNotFound().getReason())))
+              .andExpect(jsonPath("$.path", is("/users/99")));
+  }
+
   // new
   @Test
   public void updateUser_validInput_userUpdated() throws Exception {
@@ -0,0 +1,111 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Prints the time to map lists of 100 to 200k users to UserGetDTOs, in a
+ * plain loop and split across ForkJoinPools of 2, 4, ... threads (up to the
+ * number of cores), and the smallest list size from which each pool beats the
+ * loop. Use it to pick dto-conversion.parallel-threshold for the machine the
+ * service runs on.
+ * Run with ./gradlew benchmark --tests '*UserGetDTOConversionBenchmark'
+ *
+ * On one core of a Xeon VM with JDK 17.0.9, ns per user:
+ *      users    loop ns   2 thr ns
+ *        100       15.9       77.6
+ *       1000       12.7       19.8
+ *      10000       12.7       14.6
+ *     100000       16.8       14.2
+ *     200000       13.4       16.5
+ * With one core two threads only take turns; the single win at 100,000 is
+ * noise. This is why the converter stays sequential when the common pool has
+ * a parallelism of 1.
+ */
+@Tag("benchmark")
+public class UserGetDTOConversionBenchmark {
+
+  private static final int[] SIZES = {100, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000};
+  // conversions per measurement, whatever the list size
+  private static final int USERS_PER_ROUND = 2_000_000;
+  private static final int ROUNDS = 5;
+
+  @Test
+  public void crossoverPerCoreCount() {
+    List<Integer> parallelisms = new ArrayList<>();
+    for (int threads = 2; threads < Runtime.getRuntime().availableProcessors(); threads *= 2) {
+      parallelisms.add(threads);
+    }
+    parallelisms.add(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    double[] sequential = new double[SIZES.length];
+    for (int s = 0; s < SIZES.length; s++) {
+      List<User> users = UserGetDTOConverterTest.createUsers(SIZES[s]);
+      sequential[s] = nanosPerUser(users, () -> UserGetDTOConverter.convertSequential(users));
+    }
+
+    System.out.printf("%8s %10s", "users", "loop ns");
+    for (int threads : parallelisms) {
+      System.out.printf(" %10s", threads + " thr ns");
+    }
+    System.out.println();
+    int[] crossover = new int[parallelisms.size()];
+    double[][] parallel = new double[parallelisms.size()][SIZES.length];
+    for (int p = 0; p < parallelisms.size(); p++) {
+      ForkJoinPool pool = new ForkJoinPool(parallelisms.get(p));
+      try {
+        for (int s = 0; s < SIZES.length; s++) {
+          List<User> users = UserGetDTOConverterTest.createUsers(SIZES[s]);
+          // a parallel stream started from a worker runs in that worker's pool
+          parallel[p][s] = nanosPerUser(users,
+                  () -> pool.submit(() -> UserGetDTOConverter.convertParallel(users)).join());
+          if (crossover[p] == 0 && parallel[p][s] < sequential[s]) {
+            crossover[p] = SIZES[s];
+          }
+        }
+      }
+      finally {
+        pool.shutdown();
+      }
+    }
+    for (int s = 0; s < SIZES.length; s++) {
+      System.out.printf("%8d %10.1f", SIZES[s], sequential[s]);
+      for (int p = 0; p < parallelisms.size(); p++) {
+        System.out.printf(" %10.1f", parallel[p][s]);
+      }
+      System.out.println();
+    }
+    for (int p = 0; p < parallelisms.size(); p++) {
+      System.out.printf("%d threads: parallel wins from %s users%n", parallelisms.get(p),
+              crossover[p] == 0 ? "(never, up to " + SIZES[SIZES.length - 1] + ")" : String.valueOf(crossover[p]));
+    }
+  }
+
+  /**
+   * @return the best average conversion time per user over ROUNDS measurements, after one warm-up measurement
+   */
+  private static double nanosPerUser(List<User> users, Supplier<List<UserGetDTO>> conversion) {
+    int repetitions = Math.max(1, USERS_PER_ROUND / users.size());
+    double best = Double.MAX_VALUE;
+    for (int round = 0; round <= ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < repetitions; i++) {
+        if (conversion.get().size() != users.size()) {
+          throw new IllegalStateException("lost users");
+        }
+      }
+      double nanos = (System.nanoTime() - start) / (double) repetitions / users.size();
+      if (round > 0) {
+        best = Math.min(best, nanos);
+      }
+    }
+    return best;
+  }
+}
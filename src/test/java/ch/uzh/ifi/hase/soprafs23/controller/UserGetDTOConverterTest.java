@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserGetDTOConverterTest {
+
+  @Test
+  public void convertParallel_keepsOrderAndFields() {
+    List<User> users = createUsers(10_000);
+
+    List<UserGetDTO> parallel = UserGetDTOConverter.convertParallel(users);
+    List<UserGetDTO> sequential = UserGetDTOConverter.convertSequential(users);
+
+    assertEquals(users.size(), parallel.size());
+    for (int i = 0; i < users.size(); i++) {
+      assertEquals(users.get(i).getId(), parallel.get(i).getId());
+      assertEquals(sequential.get(i).getUsername(), parallel.get(i).getUsername());
+      assertEquals(sequential.get(i).getStatus(), parallel.get(i).getStatus());
+      assertEquals(sequential.get(i).getCreation_date(), parallel.get(i).getCreation_date());
+      assertEquals(sequential.get(i).getBirthday(), parallel.get(i).getBirthday());
+    }
+  }
+
+  @Test
+  public void convert_belowAndAboveThreshold_sameResult() {
+    UserGetDTOConverter converter = new UserGetDTOConverter(100);
+
+    assertEquals(99, converter.convert(createUsers(99)).size());
+    List<UserGetDTO> converted = converter.convert(createUsers(1000));
+    assertEquals(1000, converted.size());
+    assertEquals("user999", converted.get(999).getUsername());
+  }
+
+  @Test
+  public void convert_emptyList_empty() {
+    assertTrue(new UserGetDTOConverter(1).convert(List.of()).isEmpty());
+    assertTrue(new UserGetDTOConverter(0).convert(List.of()).isEmpty());
+  }
+
+  static List<User> createUsers(int count) {
+    List<User> users = new ArrayList<>(count);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < count; i++) {
+      User user = new User();
+      user.setId((long) i);
+      user.setUsername("user" + i);
+      user.setPassword("pw");
+      user.setStatus(i % 20 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+      user.setCreation_date(new Date(now - i * 60_000L));
+      user.setBirthday(i % 3 == 0 ? null : new Date(now - i * 86_400_000L));
+      users.add(user);
+    }
+    return users;
+  }
+}
@@ -0,0 +1,57 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.service.SessionActivityTracker;
+import ch.uzh.ifi.hase.soprafs23.service.UserImportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(value = UserImportController.class, properties = "import.admin-token=import-test-token")
+@Import(SessionActivityTracker.class)
+public class UserImportControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @MockBean
+  private UserImportService userImportService;
+
+  @Test
+  public void importCsv_withAdminToken_reachesTheService() throws Exception {
+    given(userImportService.importUsers(any(), eq(UserImportService.Format.CSV)))
+            .willThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Error: Another import is running"));
+
+    mockMvc.perform(post("/users/import")
+                    .header(ProfilingController.ADMIN_TOKEN, "import-test-token")
+                    .contentType(UserImportController.TEXT_CSV_VALUE)
+                    .content("username,password\nalice,pw\n"))
+            .andExpect(status().isConflict());
+  }
+
+  @Test
+  public void importCsv_missingOrWrongAdminToken_forbidden() throws Exception {
+    mockMvc.perform(post("/users/import")
+                    .contentType(UserImportController.TEXT_CSV_VALUE)
+                    .content("username,password\nalice,pw\n"))
+            .andExpect(status().isForbidden());
+    mockMvc.perform(post("/users/import")
+                    .header(ProfilingController.ADMIN_TOKEN, "import-test-tokeN")
+                    .contentType(UserImportController.TEXT_CSV_VALUE)
+                    .content("username,password\nalice,pw\n"))
+            .andExpect(status().isForbidden());
+
+    verifyNoInteractions(userImportService);
+  }
+}
@@ -0,0 +1,112 @@
+package ch.uzh.ifi.hase.soprafs23.controller;
+
+import ch.uzh.ifi.hase.soprafs23.cluster.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserJsonCacheTest {
+
+  private final UserChangeLog changeLog = new UserChangeLog(16);
+  private final UserJsonCache cache = new UserJsonCache(new ObjectMapper(), changeLog,
+          new UserDirectory(null, changeLog, null, false, "", "", 1, 1), 2);
+
+  private static UserGetDTO user(long id, String username) {
+    UserGetDTO user = new UserGetDTO();
+    user.setId(id);
+    user.setUsername(username);
+    return user;
+  }
+
+  @Test
+  public void get_cachesSerializedUser() {
+    AtomicInteger loads = new AtomicInteger();
+
+    byte[] first = cache.get(1L, () -> {
+      loads.incrementAndGet();
+      return user(1L, "first");
+    });
+    byte[] second = cache.get(1L, () -> user(1L, "other"));
+
+    assertSame(first, second);
+    assertEquals(1, loads.get());
+    assertTrue(new String(first, StandardCharsets.UTF_8).contains("\"username\":\"first\""));
+  }
+
+  @Test
+  public void changeLogEntry_invalidatesUser() {
+    cache.get(1L, () -> user(1L, "before"));
+
+    changeLog.record(UserChangeType.UPDATED, 1L);
+    byte[] json = cache.get(1L, () -> user(1L, "after"));
+
+    assertTrue(new String(json, StandardCharsets.UTF_8).contains("\"username\":\"after\""));
+  }
+
+  @Test
+  public void invalidationDuringLoad_resultNotCached() {
+    byte[] stale = cache.get(1L, () -> {
+      // the user is changed while this reader is still loading the old state
+      cache.invalidate(1L);
+      return user(1L, "stale");
+    });
+    byte[] fresh = cache.get(1L, () -> user(1L, "fresh"));
+
+    assertTrue(new String(stale, StandardCharsets.UTF_8).contains("stale"));
+    assertTrue(new String(fresh, StandardCharsets.UTF_8).contains("fresh"));
+  }
+
+  @Test
+  public void get_isBounded() {
+    for (long id = 1; id <= 5; id++) {
+      long userId = id;
+      cache.get(userId, () -> user(userId, "user" + userId));
+    }
+
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void loaderFailure_isPassedOnAndNotCached() {
+    assertThrows(IllegalStateException.class, () -> cache.get(1L, () -> {
+      throw new IllegalStateException("not found");
+    }));
+
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void clustered_onlyOwnedUsersCached_directoryInvalidationDropsThem() {
+    UserDirectory directory = new UserDirectory(null, changeLog, null, true, "http://a", "http://a,http://b", 16, 1);
+    UserJsonCache clusteredCache = new UserJsonCache(new ObjectMapper(), changeLog, directory, 10);
+    long owned = 1;
+    while (!directory.owns(owned)) {
+      owned++;
+    }
+    long other = 1;
+    while (directory.owns(other)) {
+      other++;
+    }
+    AtomicInteger loads = new AtomicInteger();
+
+    // e.g. served here after a failed forward: the owner would never invalidate it on this node
+    clusteredCache.get(other, () -> user(loads.incrementAndGet(), "other"));
+    clusteredCache.get(other, () -> user(loads.incrementAndGet(), "other"));
+    assertEquals(2, loads.get());
+    assertEquals(0, clusteredCache.size());
+
+    long ownedId = owned;
+    clusteredCache.get(ownedId, () -> user(ownedId, "before"));
+    assertEquals(1, clusteredCache.size());
+    // e.g. sent by the node where the user changed, or dropped by a rebalance
+    directory.invalidate(ownedId);
+    assertEquals(0, clusteredCache.size());
+  }
+}
@@ -0,0 +1,96 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The traffic mixes of the load test. Each arrival of the open model fires
+ * one operation (login/logout churn fires two in a row); the arrival rate is
+ * the configured rate times rateFactor.
+ */
+public enum LoadScenario {
+
+  /**
+   * new users, at five times the rate for one second out of every five
+   */
+  SIGNUP_BURST {
+    @Override
+    double rateFactor(long elapsedNanos) {
+      return (elapsedNanos / 1_000_000_000L) % 5 == 0 ? 5.0 : 0.5;
+    }
+
+    @Override
+    CompletableFuture<?> fire(LoadTraffic traffic, ThreadLocalRandom random, long scheduledNanos) {
+      return traffic.signup(scheduledNanos);
+    }
+  },
+
+  /**
+   * a random existing user logs in and out again
+   */
+  LOGIN_CHURN {
+    @Override
+    CompletableFuture<?> fire(LoadTraffic traffic, ThreadLocalRandom random, long scheduledNanos) {
+      return traffic.loginLogout(traffic.anyUser(random), scheduledNanos);
+    }
+  },
+
+  /**
+   * clients polling profiles; most polls go to a small set of popular users
+   */
+  PROFILE_POLLING {
+    @Override
+    CompletableFuture<?> fire(LoadTraffic traffic, ThreadLocalRandom random, long scheduledNanos) {
+      return traffic.getProfile(traffic.skewedUser(random), scheduledNanos);
+    }
+  },
+
+  /**
+   * dashboards: pages, status pages, stats, birthdays and the occasional full list
+   */
+  LIST_HEAVY {
+    @Override
+    CompletableFuture<?> fire(LoadTraffic traffic, ThreadLocalRandom random, long scheduledNanos) {
+      int pick = random.nextInt(100);
+      if (pick < 50) {
+        return traffic.get("page", "/users?page=" + random.nextInt(10) + "&size=100", scheduledNanos);
+      }
+      if (pick < 70) {
+        return traffic.get("status page", "/users?status=ONLINE&page=0&size=100", scheduledNanos);
+      }
+      if (pick < 85) {
+        return traffic.get("stats", "/users/stats", scheduledNanos);
+      }
+      if (pick < 95) {
+        return traffic.get("birthdays", "/users/birthdays?days=7", scheduledNanos);
+      }
+      return traffic.get("all users", "/users", scheduledNanos);
+    }
+  },
+
+  /**
+   * a production-like blend of the scenarios above
+   */
+  MIXED {
+    @Override
+    CompletableFuture<?> fire(LoadTraffic traffic, ThreadLocalRandom random, long scheduledNanos) {
+      int pick = random.nextInt(100);
+      if (pick < 60) {
+        return PROFILE_POLLING.fire(traffic, random, scheduledNanos);
+      }
+      if (pick < 80) {
+        return LIST_HEAVY.fire(traffic, random, scheduledNanos);
+      }
+      if (pick < 95) {
+        return LOGIN_CHURN.fire(traffic, random, scheduledNanos);
+      }
+      return SIGNUP_BURST.fire(traffic, random, scheduledNanos);
+    }
+  };
+
+  double rateFactor(long elapsedNanos) {
+    return 1.0;
+  }
+
+  abstract CompletableFuture<?> fire(LoadTraffic traffic, ThreadLocalRandom random, long scheduledNanos);
+}
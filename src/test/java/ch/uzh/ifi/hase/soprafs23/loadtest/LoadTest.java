@@ -0,0 +1,131 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Boots the application on a random port (with the embedded H2 database) and
+ * drives it over HTTP with the LoadScenarios. The load is an open model:
+ * arrivals are scheduled at the target rate whether or not earlier requests
+ * have been answered, like independent clients would, and latencies are
+ * measured from the scheduled time.
+ * Reports go to build/reports/loadtest/{scenario}.json and .html.
+ * Run with ./gradlew loadTest, e.g.
+ * ./gradlew loadTest -PloadTest.scenarios=PROFILE_POLLING,MIXED -PloadTest.rate=500 -PloadTest.durationSeconds=60
+ *
+ * Defaults (200 arrivals/s, 30 s after a 5 s warm-up, 1000 seeded users), on
+ * one core of a Xeon VM with JDK 17.0.9, server and load generator sharing it:
+ *   scenario          req/s   error rate   p50 ms   p99 ms
+ *   SIGNUP_BURST      280.1        0.000    189.1   1289.6
+ *   LOGIN_CHURN       399.9        0.000      1.4     14.3   (login)
+ *   PROFILE_POLLING   200.0        0.000      0.8      4.6
+ *   LIST_HEAVY        153.9        0.095   5466.7  10309.9   (page)
+ *   MIXED             229.5        0.000      0.7     15.3   (profile)
+ * LIST_HEAVY runs after the signups, against about 11k users, and needs
+ * more than one core at this rate: the errors are pool timeouts and client
+ * timeouts of the requests queued behind the all-users lists.
+ */
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class LoadTest {
+
+  @LocalServerPort
+  private int port;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Test
+  public void runScenarios() throws Exception {
+    double rate = Double.parseDouble(System.getProperty("loadtest.rate", "200"));
+    long durationSeconds = Long.getLong("loadtest.duration-seconds", 30);
+    long warmupSeconds = Long.getLong("loadtest.warmup-seconds", 5);
+    int maxOutstanding = Integer.getInteger("loadtest.max-outstanding", 2000);
+    Path reportDir = Paths.get(System.getProperty("loadtest.report-dir", "build/reports/loadtest"));
+
+    HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    LoadTraffic traffic = new LoadTraffic(client, "http://localhost:" + port, objectMapper);
+    traffic.seed(Integer.getInteger("loadtest.users", 1000));
+
+    for (LoadScenario scenario : scenarios(System.getProperty("loadtest.scenarios", "ALL"))) {
+      // the warm-up is not reported; it gives the JIT and the caches a chance
+      run(traffic, scenario, new LoadTestReport(scenario.name(), rate), rate, warmupSeconds, maxOutstanding);
+      LoadTestReport report = new LoadTestReport(scenario.name(), rate);
+      run(traffic, scenario, report, rate, durationSeconds, maxOutstanding);
+
+      Map<String, Object> summary = report.toMap();
+      System.out.printf("%-16s %8.1f req/s  errors %d (%.3f)  -> %s%n", scenario, summary.get("throughputPerSecond"),
+              summary.get("errors"), summary.get("errorRate"), report.write(reportDir, objectMapper));
+    }
+  }
+
+  /**
+   * Fires the arrivals of one scenario for the given time. Arrivals that would
+   * exceed maxOutstanding requests in flight are skipped and reported, so an
+   * overloaded server cannot exhaust the load generator.
+   */
+  private static void run(LoadTraffic traffic, LoadScenario scenario, LoadTestReport report, double rate,
+                          long seconds, int maxOutstanding) throws InterruptedException {
+    traffic.recordInto(report);
+    Semaphore outstanding = new Semaphore(maxOutstanding);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(seconds);
+    long next = start;
+    while (next < end) {
+      long now = System.nanoTime();
+      if (next > now) {
+        LockSupport.parkNanos(next - now);
+      }
+      if (outstanding.tryAcquire()) {
+        try {
+          scenario.fire(traffic, random, next).whenComplete((result, failure) -> outstanding.release());
+        }
+        catch (RuntimeException e) {
+          outstanding.release();
+          report.record("generator", 0, 0);
+        }
+      }
+      else {
+        report.skipped();
+      }
+      next += (long) (1e9 / (rate * scenario.rateFactor(next - start)));
+    }
+    // wait for the stragglers, they belong to this run
+    if (outstanding.tryAcquire(maxOutstanding, 30, TimeUnit.SECONDS)) {
+      outstanding.release(maxOutstanding);
+    }
+    report.finish(System.nanoTime() - start);
+  }
+
+  private static List<LoadScenario> scenarios(String names) {
+    if ("ALL".equalsIgnoreCase(names.trim())) {
+      return List.of(LoadScenario.values());
+    }
+    List<LoadScenario> scenarios = new ArrayList<>();
+    for (String name : names.split(",")) {
+      scenarios.add(LoadScenario.valueOf(name.trim().toUpperCase()));
+    }
+    return scenarios;
+  }
+}
@@ -0,0 +1,160 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of one load test run: every latency per operation (kept in full,
+ * so the percentiles are exact), status codes and error counts, written as
+ * JSON and as an HTML table.
+ * A request counts as an error on a 5xx, a 4xx, a timeout or a connection
+ * failure (recorded as status 0), and when the generator had to skip an
+ * arrival because too many requests were outstanding.
+ */
+class LoadTestReport {
+
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+  private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+  private final String scenario;
+  private final double targetRate;
+  private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+  private final LongAdder skipped = new LongAdder();
+  private long elapsedNanos;
+
+  LoadTestReport(String scenario, double targetRate) {
+    this.scenario = scenario;
+    this.targetRate = targetRate;
+  }
+
+  void record(String operation, long latencyNanos, int status) {
+    operations.computeIfAbsent(operation, name -> new Operation()).record(latencyNanos, status);
+  }
+
+  void skipped() {
+    skipped.increment();
+  }
+
+  void finish(long elapsedNanos) {
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  Map<String, Object> toMap() {
+    double seconds = elapsedNanos / 1e9;
+    long requests = 0;
+    long errors = skipped.sum();
+    Map<String, Object> perOperation = new TreeMap<>();
+    for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+      Map<String, Object> operation = entry.getValue().toMap(seconds);
+      requests += (Long) operation.get("requests");
+      errors += (Long) operation.get("errors");
+      perOperation.put(entry.getKey(), operation);
+    }
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("scenario", scenario);
+    map.put("targetArrivalsPerSecond", targetRate);
+    map.put("durationSeconds", round(seconds));
+    map.put("requests", requests);
+    map.put("throughputPerSecond", round(requests / seconds));
+    map.put("skippedArrivals", skipped.sum());
+    map.put("errors", errors);
+    map.put("errorRate", requests + skipped.sum() == 0 ? 0.0 : round((double) errors / (requests + skipped.sum())));
+    map.put("operations", perOperation);
+    return map;
+  }
+
+  /**
+   * @return the JSON file
+   */
+  Path write(Path directory, ObjectMapper objectMapper) throws IOException {
+    Files.createDirectories(directory);
+    Map<String, Object> map = toMap();
+    Path json = directory.resolve(scenario + ".json");
+    objectMapper.writerWithDefaultPrettyPrinter().writeValue(json.toFile(), map);
+    Files.write(directory.resolve(scenario + ".html"), toHtml(map).getBytes(StandardCharsets.UTF_8));
+    return json;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static String toHtml(Map<String, Object> map) {
+    StringBuilder html = new StringBuilder(4096);
+    html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Load test ")
+            .append(map.get("scenario")).append("</title>\n<style>")
+            .append("body{font-family:sans-serif}table{border-collapse:collapse}")
+            .append("td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}th:first-child,td:first-child{text-align:left}")
+            .append("</style></head><body>\n<h1>").append(map.get("scenario")).append("</h1>\n<table>\n");
+    for (String key : List.of("targetArrivalsPerSecond", "durationSeconds", "requests", "throughputPerSecond",
+            "skippedArrivals", "errors", "errorRate")) {
+      html.append("<tr><th>").append(key).append("</th><td>").append(map.get(key)).append("</td></tr>\n");
+    }
+    html.append("</table>\n<h2>Operations</h2>\n<table>\n<tr><th>operation</th><th>requests</th><th>per second</th>")
+            .append("<th>errors</th><th>p50 ms</th><th>p90 ms</th><th>p99 ms</th><th>p99.9 ms</th><th>max ms</th>")
+            .append("<th>status codes</th></tr>\n");
+    Map<String, Map<String, Object>> operations = (Map<String, Map<String, Object>>) map.get("operations");
+    for (Map.Entry<String, Map<String, Object>> entry : operations.entrySet()) {
+      Map<String, Object> operation = entry.getValue();
+      Map<String, Object> latency = (Map<String, Object>) operation.get("latencyMillis");
+      html.append("<tr><td>").append(entry.getKey()).append("</td>");
+      for (Object value : new Object[]{operation.get("requests"), operation.get("throughputPerSecond"),
+              operation.get("errors"), latency.get("p50"), latency.get("p90"), latency.get("p99"), latency.get("p99.9"),
+              latency.get("max"), operation.get("statusCodes")}) {
+        html.append("<td>").append(value).append("</td>");
+      }
+      html.append("</tr>\n");
+    }
+    return html.append("</table>\n</body></html>\n").toString();
+  }
+
+  private static double round(double value) {
+    return Math.round(value * 1000) / 1000.0;
+  }
+
+  private static final class Operation {
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+    private final Map<Integer, Long> statusCodes = new TreeMap<>();
+
+    synchronized void record(long latencyNanos, int status) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = latencyNanos;
+      statusCodes.merge(status, 1L, Long::sum);
+      if (status == 0 || status >= 400) {
+        errors++;
+      }
+    }
+
+    synchronized Map<String, Object> toMap(double seconds) {
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      Map<String, Object> latency = new LinkedHashMap<>();
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        // nearest rank
+        int rank = Math.max(0, (int) Math.ceil(PERCENTILES[i] * count) - 1);
+        latency.put(PERCENTILE_NAMES[i], count == 0 ? 0.0 : round(sorted[rank] / 1e6));
+      }
+      latency.put("max", count == 0 ? 0.0 : round(sorted[count - 1] / 1e6));
+
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("requests", (long) count);
+      map.put("throughputPerSecond", round(count / seconds));
+      map.put("errors", errors);
+      map.put("latencyMillis", latency);
+      map.put("statusCodes", new TreeMap<>(statusCodes));
+      return map;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadTestReportTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void toMap_exactPercentilesAndErrors() {
+    LoadTestReport report = new LoadTestReport("PROFILE_POLLING", 100);
+    for (int i = 1; i <= 1000; i++) {
+      report.record("profile", i * 1_000_000L, i <= 990 ? 200 : 500);
+    }
+    report.record("profile", 1_000_000L, 0);
+    report.skipped();
+    report.finish(10_000_000_000L);
+
+    Map<String, Object> map = report.toMap();
+    assertEquals(1001L, map.get("requests"));
+    assertEquals(100.1, map.get("throughputPerSecond"));
+    assertEquals(12L, map.get("errors"));
+
+    Map<String, Object> profile = (Map<String, Object>) ((Map<String, Object>) map.get("operations")).get("profile");
+    Map<String, Object> latency = (Map<String, Object>) profile.get("latencyMillis");
+    assertEquals(500.0, latency.get("p50"));
+    assertEquals(990.0, latency.get("p99"));
+    assertEquals(1000.0, latency.get("max"));
+    assertEquals(990L, ((Map<Integer, Long>) profile.get("statusCodes")).get(200));
+  }
+
+  @Test
+  public void write_jsonAndHtml() throws Exception {
+    LoadTestReport report = new LoadTestReport("MIXED", 10);
+    report.record("stats", 2_000_000L, 200);
+    report.finish(1_000_000_000L);
+
+    Path json = report.write(tempDir, new ObjectMapper());
+
+    assertEquals("MIXED", new ObjectMapper().readTree(json.toFile()).path("scenario").asText());
+    assertTrue(Files.readString(tempDir.resolve("MIXED.html")).contains("<td>stats</td>"));
+  }
+}
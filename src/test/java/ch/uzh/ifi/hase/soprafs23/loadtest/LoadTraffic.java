@@ -0,0 +1,163 @@
+package ch.uzh.ifi.hase.soprafs23.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HTTP requests of the load scenarios against one running server. Every
+ * request is timed from its scheduled time (not from when it was actually
+ * sent), so a server that falls behind shows up in the latencies instead of
+ * silently slowing the load down.
+ */
+class LoadTraffic {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private final HttpClient client;
+  private final String baseUrl;
+  private final ObjectMapper objectMapper;
+  private final List<SeedUser> users = new ArrayList<>();
+  private final AtomicLong signups = new AtomicLong();
+
+  private volatile LoadTestReport report;
+
+  LoadTraffic(HttpClient client, String baseUrl, ObjectMapper objectMapper) {
+    this.client = client;
+    this.baseUrl = baseUrl;
+    this.objectMapper = objectMapper;
+  }
+
+  void recordInto(LoadTestReport report) {
+    this.report = report;
+  }
+
+  /**
+   * creates the users the scenarios log in with and poll, one request at a
+   * time; POST /users only answers with the token, so the ids are read back
+   * from the user list
+   */
+  void seed(int count) throws IOException, InterruptedException {
+    for (int i = 0; i < count; i++) {
+      HttpResponse<String> response = client.send(
+              post("/users", Map.of("username", "load-seed-" + i, "password", "pw")),
+              HttpResponse.BodyHandlers.ofString());
+      if (response.statusCode() != 201) {
+        throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+      }
+    }
+    HttpResponse<String> all = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/users")).timeout(TIMEOUT)
+            .header("Accept", "application/json").GET().build(), HttpResponse.BodyHandlers.ofString());
+    for (JsonNode user : objectMapper.readTree(all.body())) {
+      String username = user.path("username").asText();
+      if (username.startsWith("load-seed-")) {
+        users.add(new SeedUser(user.path("id").asLong(), username, "pw"));
+      }
+    }
+  }
+
+  SeedUser anyUser(ThreadLocalRandom random) {
+    return users.get(random.nextInt(users.size()));
+  }
+
+  /**
+   * 80% of the picks go to the first 10% of the users
+   */
+  SeedUser skewedUser(ThreadLocalRandom random) {
+    int hot = Math.max(1, users.size() / 10);
+    return users.get(random.nextInt(100) < 80 ? random.nextInt(hot) : random.nextInt(users.size()));
+  }
+
+  CompletableFuture<?> signup(long scheduledNanos) {
+    String username = "load-signup-" + signups.incrementAndGet() + "-" + System.nanoTime();
+    return send("signup", post("/users", Map.of("username", username, "password", "pw")), scheduledNanos);
+  }
+
+  CompletableFuture<?> loginLogout(SeedUser user, long scheduledNanos) {
+    return send("login", post("/login", Map.of("username", user.username, "password", user.password)), scheduledNanos)
+            .thenCompose(response -> {
+              if (response.statusCode() != 200) {
+                return CompletableFuture.completedFuture(response);
+              }
+              String token = readTree(response.body()).path("token").asText();
+              HttpRequest logout = json("/login").PUT(bodyOf(Map.of("token", token))).build();
+              return send("logout", logout, System.nanoTime());
+            });
+  }
+
+  CompletableFuture<?> getProfile(SeedUser user, long scheduledNanos) {
+    return get("profile", "/users/" + user.id, scheduledNanos);
+  }
+
+  CompletableFuture<HttpResponse<String>> get(String operation, String path, long scheduledNanos) {
+    return send(operation, HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(TIMEOUT)
+            .header("Accept", "application/json").GET().build(), scheduledNanos);
+  }
+
+  private CompletableFuture<HttpResponse<String>> send(String operation, HttpRequest request, long scheduledNanos) {
+    LoadTestReport current = report;
+    return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, failure) -> {
+              long latencyNanos = System.nanoTime() - scheduledNanos;
+              if (failure != null) {
+                current.record(operation, latencyNanos, 0);
+              }
+              else {
+                current.record(operation, latencyNanos, response.statusCode());
+              }
+            });
+  }
+
+  private HttpRequest post(String path, Map<String, String> body) {
+    return json(path).POST(bodyOf(body)).build();
+  }
+
+  private HttpRequest.Builder json(String path) {
+    return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(TIMEOUT)
+            .header("Content-Type", "application/json")
+            .header("Accept", "application/json");
+  }
+
+  private HttpRequest.BodyPublisher bodyOf(Map<String, String> body) {
+    try {
+      return HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private JsonNode readTree(String body) {
+    try {
+      return objectMapper.readTree(body);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static final class SeedUser {
+    final long id;
+    final String username;
+    final String password;
+
+    SeedUser(long id, String username, String password) {
+      this.id = id;
+      this.username = username;
+      this.password = password;
+    }
+  }
+}
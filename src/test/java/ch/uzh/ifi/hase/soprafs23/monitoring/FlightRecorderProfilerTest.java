@@ -0,0 +1,59 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightRecorderProfilerTest {
+
+  private final FlightRecorderProfiler profiler = new FlightRecorderProfiler(5, 10, 5);
+
+  @AfterEach
+  public void tearDown() {
+    profiler.discard();
+  }
+
+  @Test
+  public void startStop_summarizesApplicationFrames() throws Exception {
+    assertTrue(profiler.start("profile", 60));
+    assertFalse(profiler.start("profile", 60));
+    assertEquals("RUNNING", profiler.status().get("state"));
+    assertNull(profiler.recordingFile());
+
+    long until = System.nanoTime() + 500_000_000L;
+    while (System.nanoTime() < until) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(42);
+      histogram.toMap();
+    }
+
+    Map<String, Object> summary = profiler.stop();
+    assertNotNull(summary);
+    // the JDK closes a recording with a destination once it has written it
+    assertNotEquals("RUNNING", profiler.status().get("state"));
+    assertNotNull(profiler.recordingFile());
+    List<?> hotMethods = (List<?>) summary.get("hotMethods");
+    assertTrue(hotMethods.size() <= 5);
+    for (Object site : hotMethods) {
+      // charged to application frames only, with the package prefix removed
+      assertTrue(((String) ((Map<?, ?>) site).get("site")).startsWith("monitoring."));
+    }
+    // a second stop returns the same summary
+    assertSame(summary, profiler.stop());
+  }
+
+  @Test
+  public void start_unknownSettings_throws() {
+    assertThrows(IllegalArgumentException.class, () -> profiler.start("everything", 10));
+  }
+
+  @Test
+  public void stop_withoutRecording_returnsNull() throws Exception {
+    assertNull(profiler.stop());
+    assertEquals("NONE", profiler.status().get("state"));
+  }
+}
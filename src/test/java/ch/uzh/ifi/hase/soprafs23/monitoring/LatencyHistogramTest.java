@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void record_valuesLandInTheirBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(10);
+    histogram.record(50);
+    histogram.record(51);
+    histogram.record(5_000_000);
+
+    @SuppressWarnings("unchecked")
+    Map<String, Long> buckets = (Map<String, Long>) histogram.toMap().get("bucketsMicros");
+    assertEquals(2L, buckets.get("le_50"));
+    assertEquals(1L, buckets.get("le_100"));
+    assertEquals(1L, buckets.get("le_inf"));
+    assertEquals(4, histogram.count());
+    assertEquals(5_000_111L, histogram.toMap().get("sumMicros"));
+  }
+
+  @Test
+  public void percentile_returnsBucketBound() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(80);
+    }
+    histogram.record(20_000);
+
+    assertEquals(100, histogram.percentileMicros(0.5));
+    assertEquals(100, histogram.percentileMicros(0.99));
+    assertEquals(25_000, histogram.percentileMicros(1.0));
+  }
+
+  @Test
+  public void percentile_emptyHistogram_isZero() {
+    assertEquals(0, new LatencyHistogram().percentileMicros(0.99));
+  }
+}
@@ -0,0 +1,50 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestTimingsTest {
+
+  @AfterEach
+  public void tearDown() {
+    RequestTimings.end();
+  }
+
+  @Test
+  public void nestedStages_areMeasuredExclusively() {
+    RequestTimings timings = RequestTimings.begin();
+    assertSame(timings, RequestTimings.current());
+
+    // controller 10ms, of which service 8ms, of which db 5ms
+    long controller = timings.enter();
+    long service = timings.enter();
+    long db = timings.enter();
+    timings.exit(RequestTimings.Stage.DB, 5_000_000, db);
+    timings.exit(RequestTimings.Stage.SERVICE, 8_000_000, service);
+    timings.exit(RequestTimings.Stage.CONTROLLER, 10_000_000, controller);
+
+    String fields = timings.toLogFields();
+    assertTrue(fields.contains("controller_ms=2.00 controller_calls=1"), fields);
+    assertTrue(fields.contains("service_ms=3.00 service_calls=1"), fields);
+    assertTrue(fields.contains("db_ms=5.00 db_calls=1"), fields);
+    assertTrue(fields.contains("flush_ms=0.00 flush_calls=0"), fields);
+  }
+
+  @Test
+  public void headerValue_listsOnlyMeasuredStages() {
+    RequestTimings timings = RequestTimings.begin();
+    timings.add(RequestTimings.Stage.BIND, 1_230_000);
+
+    String header = timings.toHeaderValue();
+
+    assertTrue(header.startsWith("bind;dur=1.23;desc=\"JSON request binding\", total;dur="), header);
+    assertFalse(header.contains("db;"), header);
+  }
+
+  @Test
+  public void withoutBegin_noTimingsAreBound() {
+    assertNull(RequestTimings.current());
+  }
+}
@@ -0,0 +1,181 @@
+package ch.uzh.ifi.hase.soprafs23.monitoring;
+
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Pins the number of SQL statements of the HTTP endpoints, filters and
+ * controller included, so an accidental N+1 or redundant query shows up as a
+ * failing test. MockMvc runs the request on the test thread, so the
+ * SqlStatisticsFilter counts into the statistics the test bound.
+ */
+@WebAppConfiguration
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {"sql-stats.enabled=true", "warmup.enabled=false"})
+public class SqlStatisticsIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  public void setup() {
+    // soft deleted users are invisible to the repository but keep their username
+    jdbcTemplate.update("DELETE FROM USER");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    SqlStatistics.end();
+  }
+
+  @Test
+  public void createUser_usernameCheckSequenceAndInsert() throws Exception {
+    SqlStatistics stats = SqlStatistics.begin();
+    perform(post("/users").content(credentials("sqlCount")), status().isCreated());
+
+    // username lookup, next sequence value, insert
+    assertEquals(3, stats.getStatements());
+    assertTrue(stats.getNanos() > 0);
+  }
+
+  @Test
+  public void getUser_singleSelectThenCached() throws Exception {
+    long id = createUser("sqlCount");
+
+    SqlStatistics stats = SqlStatistics.begin();
+    perform(get("/users/" + id).accept(MediaType.APPLICATION_JSON), status().isOk());
+    assertEquals(1, stats.getStatements());
+    assertEquals(1, stats.getRows());
+
+    // served from the UserJsonCache
+    stats = SqlStatistics.begin();
+    perform(get("/users/" + id).accept(MediaType.APPLICATION_JSON), status().isOk());
+    assertEquals(0, stats.getStatements());
+  }
+
+  @Test
+  public void getUser_malformedId_noStatement() throws Exception {
+    SqlStatistics stats = SqlStatistics.begin();
+    perform(get("/users/abc").accept(MediaType.APPLICATION_JSON), status().isNotFound());
+
+    assertEquals(0, stats.getStatements());
+  }
+
+  @Test
+  public void getUsers_singleSelectForAllUsers() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      createUser("sqlCount" + i);
+    }
+
+    SqlStatistics stats = SqlStatistics.begin();
+    perform(get("/users"), status().isOk());
+    assertEquals(1, stats.getStatements());
+    assertEquals(3, stats.getRows());
+
+    // a page, of a status or of all users, is one query as well, without a count query
+    stats = SqlStatistics.begin();
+    perform(get("/users?status=ONLINE&page=0&size=50"), status().isOk());
+    assertEquals(1, stats.getStatements());
+
+    stats = SqlStatistics.begin();
+    perform(get("/users?page=0&size=50"), status().isOk());
+    assertEquals(1, stats.getStatements());
+  }
+
+  @Test
+  public void loginAndLogout_lookupAndStatusUpdate() throws Exception {
+    createUser("sqlCount");
+
+    SqlStatistics stats = SqlStatistics.begin();
+    String token = objectMapper.readTree(perform(post("/login").content(credentials("sqlCount")), status().isOk()))
+            .path("token").asText();
+    // locked lookup by username, conditional status UPDATE
+    assertEquals(2, stats.getStatements());
+
+    stats = SqlStatistics.begin();
+    perform(put("/login").content("{\"token\":\"" + token + "\"}"), status().isOk());
+    // lookup by token, conditional status UPDATE
+    assertEquals(2, stats.getStatements());
+  }
+
+  @Test
+  public void matchToken_singleSelect() throws Exception {
+    String token = createUserToken("sqlCount");
+    long id = userRepository.findByUsername("sqlCount").getId();
+
+    SqlStatistics stats = SqlStatistics.begin();
+    perform(post("/users/" + id + "/edit").content("{\"token\":\"" + token + "\"}"), status().isOk());
+
+    assertEquals(1, stats.getStatements());
+  }
+
+  @Test
+  public void deleteUser_lockedLookupAndSoftDelete() throws Exception {
+    String token = createUserToken("sqlCount");
+    long id = userRepository.findByUsername("sqlCount").getId();
+
+    SqlStatistics stats = SqlStatistics.begin();
+    perform(delete("/users/" + id).header(HttpHeaders.AUTHORIZATION, "Bearer " + token), status().isNoContent());
+
+    // locked lookup with the token check, conditional UPDATE of deleted_at
+    assertEquals(2, stats.getStatements());
+  }
+
+  @Test
+  public void getStats_noStatement() throws Exception {
+    createUser("sqlCount");
+
+    SqlStatistics stats = SqlStatistics.begin();
+    perform(get("/users/stats"), status().isOk());
+
+    assertEquals(0, stats.getStatements());
+  }
+
+  private long createUser(String username) throws Exception {
+    createUserToken(username);
+    return userRepository.findByUsername(username).getId();
+  }
+
+  private String createUserToken(String username) throws Exception {
+    String body = perform(post("/users").content(credentials(username)), status().isCreated());
+    return objectMapper.readTree(body).path("token").asText();
+  }
+
+  private String perform(MockHttpServletRequestBuilder request, ResultMatcher expectedStatus) throws Exception {
+    return mockMvc.perform(request.contentType(MediaType.APPLICATION_JSON))
+            .andExpect(expectedStatus)
+            .andReturn().getResponse().getContentAsString();
+  }
+
+  private static String credentials(String username) {
+    return "{\"username\":\"" + username + "\",\"password\":\"password\"}";
+  }
+}
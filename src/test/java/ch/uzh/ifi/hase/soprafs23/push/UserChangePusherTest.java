@@ -0,0 +1,113 @@
+package ch.uzh.ifi.hase.soprafs23.push;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs23.service.UserChangeLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class UserChangePusherTest {
+
+  @Mock
+  private SimpMessageSendingOperations messagingTemplate;
+
+  @Mock
+  private UserRepository userRepository;
+
+  private final UserChangeLog changeLog = new UserChangeLog(16);
+
+  private UserChangePusher pusher;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    pusher = new UserChangePusher(messagingTemplate, userRepository, changeLog);
+  }
+
+  private static Message<byte[]> stomp(StompCommand command, String sessionId, String subscriptionId,
+                                       String destination) {
+    StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+    accessor.setSessionId(sessionId);
+    accessor.setSubscriptionId(subscriptionId);
+    accessor.setDestination(destination);
+    return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+  }
+
+  @Test
+  public void burstOfChanges_pushedOnce() {
+    pusher.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s1", "sub1", "/topic/users/1")));
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("pushed");
+    user.setStatus(UserStatus.ONLINE);
+    Mockito.when(userRepository.findAllById(any())).thenReturn(Collections.singletonList(user));
+
+    changeLog.record(UserChangeType.LOGGED_IN, 1L);
+    changeLog.record(UserChangeType.UPDATED, 1L);
+    changeLog.record(UserChangeType.UPDATED, 1L);
+    pusher.flush();
+    pusher.flush();
+
+    ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+    Mockito.verify(messagingTemplate, Mockito.times(1)).convertAndSend(eq("/topic/users/1"), payload.capture());
+    assertEquals("pushed", ((UserGetDTO) payload.getValue()).getUsername());
+    Mockito.verify(userRepository).findAllById(List.of(1L));
+  }
+
+  @Test
+  public void changeWithoutSubscriber_notLoaded() {
+    pusher.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s1", "sub1", "/topic/users/1")));
+
+    changeLog.record(UserChangeType.UPDATED, 2L);
+    pusher.flush();
+
+    Mockito.verifyNoInteractions(userRepository);
+    Mockito.verify(messagingTemplate, Mockito.never()).convertAndSend(anyString(), any(Object.class));
+  }
+
+  @Test
+  public void disconnect_releasesSubscriptions() {
+    pusher.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s1", "sub1", "/topic/users/1")));
+    pusher.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s2", "sub1", "/topic/users/1")));
+    assertEquals(2, pusher.subscriberCount(1L));
+
+    pusher.onDisconnect(new SessionDisconnectEvent(this, stomp(StompCommand.DISCONNECT, "s1", null, null), "s1",
+            CloseStatus.NORMAL));
+    assertEquals(1, pusher.subscriberCount(1L));
+
+    pusher.onDisconnect(new SessionDisconnectEvent(this, stomp(StompCommand.DISCONNECT, "s2", null, null), "s2",
+            CloseStatus.NORMAL));
+    assertEquals(0, pusher.subscriberCount(1L));
+  }
+
+  @Test
+  public void userIdOf_onlyUserTopics() {
+    assertEquals(42L, UserChangePusher.userIdOf("/topic/users/42"));
+    assertNull(UserChangePusher.userIdOf("/topic/users/abc"));
+    assertNull(UserChangePusher.userIdOf("/topic/other/42"));
+    assertNull(UserChangePusher.userIdOf(null));
+  }
+}
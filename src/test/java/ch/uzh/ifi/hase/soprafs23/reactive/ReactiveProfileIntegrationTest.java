@@ -0,0 +1,136 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.controller.UserController;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the application with the reactive profile on Netty (with its own
+ * database) and checks that the routed read and write endpoints work in the
+ * same process, with the usual error body, and that the annotated, blocking
+ * endpoints are not served.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.profiles.active=reactive",
+        "spring.datasource.url=jdbc:h2:mem:reactive-test;DB_CLOSE_DELAY=-1",
+        "reactive.r2dbc-url=r2dbc:pool:h2:mem:///reactive-test?maxSize=4",
+        "warmup.enabled=false"})
+public class ReactiveProfileIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @Autowired
+  private ApplicationContext context;
+
+  private User user;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    user = new User();
+    user.setUsername("reactive");
+    user.setPassword("password");
+    user.setToken(UUID.randomUUID());
+    user.setStatus(UserStatus.ONLINE);
+    user.setCreation_date(new Date());
+    user = userRepository.saveAndFlush(user);
+  }
+
+  @Test
+  public void routedEndpoints_served() {
+    webTestClient.get().uri("/users/" + user.getId()).exchange()
+        .expectStatus().isOk()
+        .expectBody().jsonPath("$.username").isEqualTo("reactive");
+
+    webTestClient.get().uri("/users").exchange()
+        .expectStatus().isOk()
+        .expectBody().jsonPath("$.length()").isEqualTo(1);
+  }
+
+  @Test
+  public void routedEndpoint_expectedFailure_documentedErrorBody() {
+    webTestClient.get().uri("/users/" + (user.getId() + 1000)).exchange()
+        .expectStatus().isNotFound()
+        .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+        .expectBody()
+        .jsonPath("$.status").isEqualTo(404)
+        .jsonPath("$.message").isEqualTo(ExpectedFailure.userNotFound().getReason())
+        .jsonPath("$.path").isEqualTo("/users/" + (user.getId() + 1000));
+  }
+
+  @Test
+  public void routedWrites_servedAndReadBack() {
+    String token = webTestClient.post().uri("/users").contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"username\":\"other\",\"password\":\"password\"}")
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody(UserTokenDTO.class).returnResult().getResponseBody().getToken();
+    long id = userRepository.findByUsername("other").getId();
+
+    webTestClient.get().uri("/users/" + id).exchange()
+        .expectStatus().isOk()
+        .expectBody().jsonPath("$.status").isEqualTo("ONLINE");
+    webTestClient.put().uri("/login").contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"token\":\"" + token + "\"}")
+        .exchange()
+        .expectStatus().isOk();
+    webTestClient.put().uri("/users/" + id).contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"username\":\"renamed\"}")
+        .exchange()
+        .expectStatus().isNoContent();
+    webTestClient.get().uri("/users/" + id).exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.username").isEqualTo("renamed")
+        .jsonPath("$.status").isEqualTo("OFFLINE");
+
+    webTestClient.post().uri("/login").contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"username\":\"renamed\",\"password\":\"wrong\"}")
+        .exchange()
+        .expectStatus().isEqualTo(ExpectedFailure.badCredentials().getStatus())
+        .expectBody().jsonPath("$.message").isEqualTo(ExpectedFailure.badCredentials().getReason());
+    webTestClient.delete().uri("/users/" + id).header(HttpHeaders.AUTHORIZATION, "Bearer " + token).exchange()
+        .expectStatus().isNoContent();
+    webTestClient.get().uri("/users/" + id).exchange()
+        .expectStatus().isNotFound();
+  }
+
+  @Test
+  public void annotatedEndpoints_notServed() {
+    // not an id
+    webTestClient.get().uri("/users/stats").exchange()
+        .expectStatus().isNotFound()
+        .expectBody().jsonPath("$.message").isEqualTo(ExpectedFailure.idNotFound().getReason());
+    webTestClient.post().uri("/users/import").contentType(MediaType.APPLICATION_NDJSON)
+        .bodyValue("{\"username\":\"imported\",\"password\":\"password\"}")
+        .exchange()
+        .expectStatus().isNotFound();
+
+    assertEquals(1, userRepository.count());
+    assertTrue(context.getBeansOfType(UserController.class).isEmpty());
+    assertTrue(context.getBeansOfType(OncePerRequestFilter.class).isEmpty());
+  }
+}
@@ -0,0 +1,141 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.Application;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.monitoring.LatencyHistogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Compares throughput and latency of the servlet stack (MVC + JPA) with the
+ * reactive profile (WebFlux + R2DBC) at high concurrency. Each stack is started
+ * on a random port with the same users and loaded with a non-blocking client
+ * keeping CONCURRENCY requests in flight.
+ * Note that GET /users/{userid} is answered from the UserJsonCache on the
+ * servlet stack; the status page is served from the database on both.
+ * Run with ./gradlew benchmark --tests '*ReactiveStackBenchmark'
+ *
+ * 10,000 users, 256 requests in flight, on one core of a Xeon VM with JDK
+ * 17.0.9 (the client shares the core with the server):
+ *   stack     endpoint                 requests/s       mean        p50        p99   errors
+ *   servlet   GET /users/{userid}            1972   119311us   100000us  1000000us        0
+ *   servlet   GET /users?status page          741   317920us   500000us >1000000us        0
+ *   reactive  GET /users/{userid}            1519   168061us   100000us   250000us        0
+ *   reactive  GET /users?status page          897   281994us   250000us >1000000us        0
+ * The cached lookup is faster on the servlet stack, the database page on the
+ * reactive one; with a single core neither stack has threads to spare.
+ */
+@Tag("benchmark")
+public class ReactiveStackBenchmark {
+
+  private static final int USERS = 10_000;
+  private static final int CONCURRENCY = 256;
+  private static final int REQUESTS = 50_000;
+
+  @Test
+  public void servletVersusReactive() {
+    System.out.printf("%-9s %-22s %12s %10s %10s %10s %8s%n", "stack", "endpoint", "requests/s", "mean", "p50",
+            "p99", "errors");
+    run("servlet");
+    run("reactive");
+  }
+
+  private static void run(String profile) {
+    SpringApplicationBuilder builder = new SpringApplicationBuilder(Application.class).properties("server.port=0");
+    if ("reactive".equals(profile)) {
+      builder.profiles("reactive");
+    }
+    try (ConfigurableApplicationContext context = builder.run()) {
+      createUsers(context.getBean(JdbcTemplate.class));
+      WebClient client = WebClient.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+
+      // warm-up
+      load(client, i -> "/users/" + (1 + i % USERS), REQUESTS / 5);
+      load(client, i -> "/users?status=ONLINE&page=" + (i % 20) + "&size=100", REQUESTS / 5);
+
+      print(profile, "GET /users/{userid}", load(client, i -> "/users/" + randomId(), REQUESTS));
+      print(profile, "GET /users?status page",
+              load(client, i -> "/users?status=ONLINE&page=" + (i % 20) + "&size=100", REQUESTS / 5));
+    }
+  }
+
+  private static Result load(WebClient client, IntFunction<String> uri, int requests) {
+    LatencyHistogram latency = new LatencyHistogram();
+    AtomicInteger errors = new AtomicInteger();
+    long start = System.nanoTime();
+    Flux.range(0, requests)
+            .flatMap(i -> {
+              long requestStart = System.nanoTime();
+              return client.get().uri(uri.apply(i)).retrieve().bodyToMono(byte[].class)
+                      .doOnSuccess(body -> latency.record((System.nanoTime() - requestStart) / 1000))
+                      .onErrorResume(e -> {
+                        errors.incrementAndGet();
+                        return Mono.empty();
+                      });
+            }, CONCURRENCY)
+            .blockLast();
+    return new Result(requests * 1_000_000_000L / (System.nanoTime() - start), latency, errors.get());
+  }
+
+  private static void print(String profile, String endpoint, Result result) {
+    Map<String, Object> latency = result.latency.toMap();
+    long count = (Long) latency.get("count");
+    System.out.printf("%-9s %-22s %12d %8dus %10s %10s %8d%n", profile, endpoint, result.throughput,
+            count == 0 ? 0 : (Long) latency.get("sumMicros") / count, micros(result.latency.percentileMicros(0.5)),
+            micros(result.latency.percentileMicros(0.99)), result.errors);
+  }
+
+  /**
+   * the bucket bound, or the last bound for the overflow bucket
+   */
+  private static String micros(long bound) {
+    return bound == Long.MAX_VALUE ? ">1000000us" : bound + "us";
+  }
+
+  private static long randomId() {
+    return 1 + ThreadLocalRandom.current().nextInt(USERS);
+  }
+
+  private static void createUsers(JdbcTemplate jdbcTemplate) {
+    List<Object[]> rows = new ArrayList<>(USERS);
+    Date birthday = new Date(0);
+    for (long id = 1; id <= USERS; id++) {
+      UUID token = UUID.randomUUID();
+      byte[] tokenBytes = ByteBuffer.allocate(16)
+              .putLong(token.getMostSignificantBits()).putLong(token.getLeastSignificantBits()).array();
+      rows.add(new Object[] {id, "user" + id, "password", tokenBytes, id % 20 == 0 ? 0 : 1,
+              new Timestamp(System.currentTimeMillis()), new Timestamp(birthday.getTime()), User.birthdayDayOf(birthday)});
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO USER (id, username, password, token, status, creation_date, birthday,"
+            + " birthday_day) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+  }
+
+  private static final class Result {
+    final long throughput;
+    final LatencyHistogram latency;
+    final int errors;
+
+    Result(long throughput, LatencyHistogram latency, int errors) {
+      this.throughput = throughput;
+      this.latency = latency;
+      this.errors = errors;
+    }
+  }
+}
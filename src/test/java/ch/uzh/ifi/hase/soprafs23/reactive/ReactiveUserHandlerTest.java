@@ -0,0 +1,108 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveUserHandlerTest {
+
+  @Mock
+  private ReactiveUserRepository reactiveUserRepository;
+
+  private ReactiveUserHandler handler;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    handler = new ReactiveUserHandler(reactiveUserRepository);
+  }
+
+  @Test
+  public void getUser_existing_ok() {
+    UserGetDTO user = new UserGetDTO();
+    user.setId(1L);
+    Mockito.when(reactiveUserRepository.findById(1L)).thenReturn(Mono.just(user));
+
+    ServerResponse response = handler.getUser(MockServerRequest.builder().pathVariable("userid", "1").build()).block();
+
+    assertNotNull(response);
+    assertEquals(HttpStatus.OK, response.statusCode());
+  }
+
+  @Test
+  public void getUser_unknownId_notFound() {
+    Mockito.when(reactiveUserRepository.findById(99L)).thenReturn(Mono.empty());
+
+    Mono<ServerResponse> response = handler.getUser(MockServerRequest.builder().pathVariable("userid", "99").build());
+
+    ExpectedFailure failure = assertThrows(ExpectedFailure.class, response::block);
+    assertEquals(ExpectedFailure.userNotFound().getReason(), failure.getReason());
+  }
+
+  @Test
+  public void getUser_malformedId_noQuery() {
+    Mono<ServerResponse> response = handler.getUser(MockServerRequest.builder().pathVariable("userid", "abc").build());
+
+    ExpectedFailure failure = assertThrows(ExpectedFailure.class, response::block);
+    assertEquals(ExpectedFailure.idNotFound().getReason(), failure.getReason());
+    Mockito.verifyNoInteractions(reactiveUserRepository);
+  }
+
+  @Test
+  public void getUser_failuresDoNotShareState() {
+    Mono<ServerResponse> response = handler.getUser(MockServerRequest.builder().pathVariable("userid", "abc").build());
+
+    // block() adds a suppressed exception to what it throws
+    ExpectedFailure first = assertThrows(ExpectedFailure.class, response::block);
+    ExpectedFailure second = assertThrows(ExpectedFailure.class, response::block);
+
+    assertNotSame(first, second);
+    assertEquals(first.getSuppressed().length, second.getSuppressed().length);
+  }
+
+  @Test
+  public void getUsers_ndjsonAccepted_streamsNdjson() {
+    Mockito.when(reactiveUserRepository.findAll()).thenReturn(Flux.empty());
+
+    ServerResponse response = handler.getUsers(MockServerRequest.builder()
+            .header("Accept", MediaType.APPLICATION_NDJSON_VALUE).build()).block();
+
+    assertNotNull(response);
+    assertEquals(MediaType.APPLICATION_NDJSON, response.headers().getContentType());
+  }
+
+  @Test
+  public void getUsers_statusPage_queriesPage() {
+    Mockito.when(reactiveUserRepository.findPage(UserStatus.ONLINE, 2, 50)).thenReturn(Flux.empty());
+
+    ServerResponse response = handler.getUsers(MockServerRequest.builder()
+            .queryParam("status", "ONLINE").queryParam("page", "2").queryParam("size", "50").build()).block();
+
+    assertNotNull(response);
+    assertEquals(MediaType.APPLICATION_JSON, response.headers().getContentType());
+    Mockito.verify(reactiveUserRepository).findPage(UserStatus.ONLINE, 2, 50);
+  }
+
+  @Test
+  public void getUsers_invalidSize_badRequest() {
+    Mono<ServerResponse> response = handler.getUsers(MockServerRequest.builder()
+            .queryParam("page", "0").queryParam("size", "0").build());
+
+    ResponseStatusException e = assertThrows(ResponseStatusException.class, response::block);
+    assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+  }
+}
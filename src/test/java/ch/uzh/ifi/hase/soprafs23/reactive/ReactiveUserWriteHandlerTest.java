@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs23.reactive;
+
+import ch.uzh.ifi.hase.soprafs23.exceptions.ExpectedFailure;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
+import ch.uzh.ifi.hase.soprafs23.service.IdempotencyStore;
+import ch.uzh.ifi.hase.soprafs23.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactiveUserWriteHandlerTest {
+
+  @Mock
+  private UserService userService;
+
+  @Mock
+  private IdempotencyStore idempotencyStore;
+
+  private ReactiveUserWriteHandler handler;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    handler = new ReactiveUserWriteHandler(userService, idempotencyStore);
+  }
+
+  @Test
+  public void deleteUser_bearerToken_runsOffTheCallingThread() {
+    AtomicReference<String> thread = new AtomicReference<>();
+    Mockito.doAnswer(invocation -> {
+      thread.set(Thread.currentThread().getName());
+      return null;
+    }).when(userService).deleteUser("1", "secret");
+
+    ServerResponse response = handler.deleteUser(MockServerRequest.builder().pathVariable("userid", "1")
+            .header(HttpHeaders.AUTHORIZATION, "Bearer secret").build()).block();
+
+    assertNotNull(response);
+    assertEquals(HttpStatus.NO_CONTENT, response.statusCode());
+    assertTrue(thread.get().startsWith("boundedElastic"), thread.get());
+  }
+
+  @Test
+  public void logout_unknownToken_expectedFailure() {
+    Mockito.doThrow(ExpectedFailure.logoutUserNotFound()).when(userService).logout("unknown");
+    UserTokenDTO body = new UserTokenDTO();
+    body.setToken("unknown");
+
+    Mono<ServerResponse> response = handler.logout(MockServerRequest.builder().body(Mono.just(body)));
+
+    ExpectedFailure failure = assertThrows(ExpectedFailure.class, response::block);
+    assertEquals(ExpectedFailure.logoutUserNotFound().getReason(), failure.getReason());
+  }
+
+  @Test
+  public void login_missingBody_badRequest() {
+    Mono<ServerResponse> response = handler.login(MockServerRequest.builder().body(Mono.empty()));
+
+    ResponseStatusException e = assertThrows(ResponseStatusException.class, response::block);
+    assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    Mockito.verifyNoInteractions(userService);
+  }
+}
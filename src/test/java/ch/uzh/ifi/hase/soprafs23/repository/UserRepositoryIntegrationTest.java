@@ -6,12 +6,19 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DataJpaTest
 public class UserRepositoryIntegrationTest {
@@ -28,7 +35,7 @@ public class UserRepositoryIntegrationTest {
     User user = new User();
     user.setUsername("firstname@lastname");
     user.setPassword("testPassword");
-    user.setToken("1");
+    user.setToken(UUID.randomUUID());
     user.setCreation_date(new GregorianCalendar(2020, Calendar.FEBRUARY, 20).getTime());
     user.setStatus(UserStatus.OFFLINE);
 
@@ -44,4 +51,110 @@ public class UserRepositoryIntegrationTest {
     assertEquals(found.getToken(), user.getToken());
     assertEquals(found.getStatus(), user.getStatus());
   }
+
+  @Test
+  public void findByStatus_returnsOnePageOfMatchingUsers() {
+    // given
+    for (int i = 0; i < 5; i++) {
+      User user = new User();
+      user.setUsername("user" + i);
+      user.setPassword("testPassword");
+      user.setToken(UUID.randomUUID());
+      user.setCreation_date(new GregorianCalendar(2020, Calendar.FEBRUARY, 20).getTime());
+      user.setStatus(i % 2 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+      entityManager.persist(user);
+    }
+    entityManager.flush();
+
+    // when
+    List<User> firstPage = userRepository.findByStatus(UserStatus.ONLINE, PageRequest.of(0, 2, Sort.by("id")));
+    List<User> secondPage = userRepository.findByStatus(UserStatus.ONLINE, PageRequest.of(1, 2, Sort.by("id")));
+
+    // then
+    assertEquals(2, firstPage.size());
+    assertEquals("user0", firstPage.get(0).getUsername());
+    assertEquals("user2", firstPage.get(1).getUsername());
+    assertEquals(1, secondPage.size());
+    assertEquals("user4", secondPage.get(0).getUsername());
+  }
+
+  @Test
+  public void findByBirthdayDayBetween_returnsBirthdaysInRange() {
+    // given
+    int[][] birthdays = {{1990, Calendar.DECEMBER, 30}, {1985, Calendar.JANUARY, 2}, {2001, Calendar.DECEMBER, 24}};
+    for (int i = 0; i < birthdays.length; i++) {
+      User user = new User();
+      user.setUsername("user" + i);
+      user.setPassword("testPassword");
+      user.setToken(UUID.randomUUID());
+      user.setCreation_date(new GregorianCalendar(2020, Calendar.FEBRUARY, 20).getTime());
+      user.setStatus(UserStatus.OFFLINE);
+      GregorianCalendar birthday = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+      birthday.clear();
+      birthday.set(birthdays[i][0], birthdays[i][1], birthdays[i][2]);
+      user.setBirthday(birthday.getTime());
+      entityManager.persist(user);
+    }
+    entityManager.flush();
+
+    // when
+    List<User> endOfYear = userRepository.findByBirthdayDayBetweenOrderByBirthdayDayAscIdAsc(1220, 1231);
+
+    // then
+    assertEquals(2, endOfYear.size());
+    assertEquals("user2", endOfYear.get(0).getUsername());
+    assertEquals(1224, endOfYear.get(0).getBirthdayDay());
+    assertEquals("user0", endOfYear.get(1).getUsername());
+    assertEquals(1, userRepository.findByBirthdayDayBetweenOrderByBirthdayDayAscIdAsc(101, 107).size());
+  }
+
+  @Test
+  public void findByToken_success() {
+    // given
+    User user = new User();
+    user.setUsername("firstname@lastname");
+    user.setPassword("testPassword");
+    user.setToken(UUID.randomUUID());
+    user.setCreation_date(new GregorianCalendar(2020, Calendar.FEBRUARY, 20).getTime());
+    user.setStatus(UserStatus.ONLINE);
+
+    entityManager.persist(user);
+    entityManager.flush();
+    entityManager.clear();
+
+    // when
+    User found = userRepository.findByToken(UUID.fromString(user.getToken().toString()));
+
+    // then
+    assertNotNull(found);
+    assertEquals(user.getUsername(), found.getUsername());
+    assertNull(userRepository.findByToken(UUID.randomUUID()));
+  }
+
+  @Test
+  public void softDeletedUser_excludedFromAllQueries() {
+    // given
+    User user = new User();
+    user.setUsername("firstname@lastname");
+    user.setPassword("testPassword");
+    user.setToken(UUID.randomUUID());
+    user.setCreation_date(new GregorianCalendar(2020, Calendar.FEBRUARY, 20).getTime());
+    user.setStatus(UserStatus.ONLINE);
+    user.setBirthday(new GregorianCalendar(2000, Calendar.MARCH, 14).getTime());
+    user.setDeletedAt(new GregorianCalendar(2023, Calendar.MARCH, 1).getTime());
+
+    entityManager.persist(user);
+    entityManager.flush();
+    entityManager.clear();
+
+    // then
+    assertTrue(userRepository.findById(user.getId()).isEmpty());
+    assertNull(userRepository.findByUsername(user.getUsername()));
+    assertNull(userRepository.findByToken(user.getToken()));
+    assertTrue(userRepository.findByStatus(UserStatus.ONLINE, PageRequest.of(0, 10)).isEmpty());
+    assertTrue(userRepository.findByBirthdayDayBetweenOrderByBirthdayDayAscIdAsc(101, 1231).isEmpty());
+    assertTrue(userRepository.findIdsByStatus(UserStatus.ONLINE).isEmpty());
+    assertTrue(userRepository.findAll().isEmpty());
+    assertEquals(0, userRepository.updateStatusByIdIn(UserStatus.OFFLINE, List.of(user.getId())));
+  }
 }
@@ -0,0 +1,175 @@
+package ch.uzh.ifi.hase.soprafs23.repository;
+
+import ch.uzh.ifi.hase.soprafs23.monitoring.LatencyHistogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Builds a million users with the old VARCHAR(255) tokens in a file database,
+ * runs db/migrate-user-token-to-binary.sql on it, and prints the size of the
+ * unique token index and the latency of a lookup by token (the query of
+ * PUT /login) before and after.
+ * The index size is the difference of the compacted database file with and
+ * without the index. Lookups are of random tokens of existing users, with
+ * H2's default cache, which the string index does not fit into.
+ * Run with ./gradlew benchmark --tests '*UserTokenStorageBenchmark'
+ *
+ * 1,000,000 users, H2 1.4.200 on one core of a Xeon VM with JDK 17.0.9:
+ *                  index bytes  ns/lookup  p50 us  p99 us
+ *   VARCHAR(255)    40,579,072     41,681      50     100
+ *   BINARY(16)      23,203,840     32,428      50      50
+ *   the migration itself took 231 s, 189 s of it in the UPDATE
+ * (the histogram's buckets are coarse at this latency, the mean is the figure to compare)
+ */
+@Tag("benchmark")
+public class UserTokenStorageBenchmark {
+
+  private static final int USERS = 1_000_000;
+  private static final int BATCH = 10_000;
+  // every 100th token is kept to look it up
+  private static final int SAMPLE_EVERY = 100;
+  private static final int LOOKUPS = 200_000;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void tokenIndex_stringVersusBinary() throws Exception {
+    String url = "jdbc:h2:file:" + dir.resolve("users");
+    List<UUID> tokens;
+    try (Connection connection = connect(url)) {
+      try (Statement statement = connection.createStatement()) {
+        // the schema Hibernate created for a String token
+        statement.execute("CREATE TABLE USER (id BIGINT NOT NULL PRIMARY KEY, username VARCHAR(255) NOT NULL,"
+                + " password VARCHAR(255) NOT NULL, token VARCHAR(255) NOT NULL, status INT NOT NULL,"
+                + " creation_date TIMESTAMP, birthday TIMESTAMP)");
+        statement.execute("ALTER TABLE USER ADD CONSTRAINT UK_USER_USERNAME UNIQUE (username)");
+        statement.execute("ALTER TABLE USER ADD CONSTRAINT UK_USER_TOKEN_STRING UNIQUE (token)");
+      }
+      tokens = insertUsers(connection);
+    }
+
+    System.out.printf("%-14s %12s %12s %10s %10s%n", "token", "index bytes", "ns/lookup", "p50 us", "p99 us");
+    long stringIndex = indexBytes(url, "UK_USER_TOKEN_STRING");
+    try (Connection connection = connect(url)) {
+      lookups("VARCHAR(255)", stringIndex, connection, tokens, false);
+
+      long start = System.nanoTime();
+      ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/migrate-user-token-to-binary.sql"));
+      System.out.printf("migration of %d users: %d ms%n", USERS, (System.nanoTime() - start) / 1_000_000);
+    }
+    long binaryIndex = indexBytes(url, "UK_USER_TOKEN");
+    try (Connection connection = connect(url)) {
+      lookups("BINARY(16)", binaryIndex, connection, tokens, true);
+    }
+  }
+
+  private static Connection connect(String url) throws SQLException {
+    return DriverManager.getConnection(url, "sa", "");
+  }
+
+  private static List<UUID> insertUsers(Connection connection) throws SQLException {
+    List<UUID> sample = new ArrayList<>(USERS / SAMPLE_EVERY);
+    connection.setAutoCommit(false);
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    try (PreparedStatement insert = connection.prepareStatement(
+            "INSERT INTO USER (id, username, password, token, status, creation_date) VALUES (?, ?, ?, ?, ?, ?)")) {
+      for (long id = 1; id <= USERS; id++) {
+        UUID token = UUID.randomUUID();
+        if (id % SAMPLE_EVERY == 0) {
+          sample.add(token);
+        }
+        insert.setLong(1, id);
+        insert.setString(2, "user" + id);
+        insert.setString(3, "password");
+        insert.setString(4, token.toString());
+        insert.setInt(5, 1);
+        insert.setTimestamp(6, now);
+        insert.addBatch();
+        if (id % BATCH == 0) {
+          insert.executeBatch();
+          connection.commit();
+        }
+      }
+    }
+    connection.setAutoCommit(true);
+    return sample;
+  }
+
+  /**
+   * compacted file size with the unique constraint minus the size without it;
+   * the constraint is added again afterwards
+   */
+  private static long indexBytes(String url, String constraint) throws SQLException, IOException {
+    long withIndex = compactedSize(url);
+    try (Connection connection = connect(url); Statement statement = connection.createStatement()) {
+      statement.execute("ALTER TABLE USER DROP CONSTRAINT " + constraint);
+    }
+    long withoutIndex = compactedSize(url);
+    try (Connection connection = connect(url); Statement statement = connection.createStatement()) {
+      statement.execute("ALTER TABLE USER ADD CONSTRAINT " + constraint + " UNIQUE (token)");
+    }
+    return withIndex - withoutIndex;
+  }
+
+  private static long compactedSize(String url) throws SQLException, IOException {
+    try (Connection connection = connect(url); Statement statement = connection.createStatement()) {
+      statement.execute("SHUTDOWN COMPACT");
+    }
+    return Files.size(Path.of(url.substring("jdbc:h2:file:".length()) + ".mv.db"));
+  }
+
+  private static void lookups(String token, long indexBytes, Connection connection, List<UUID> tokens,
+                              boolean binary) throws SQLException {
+    try (PreparedStatement select = connection.prepareStatement("SELECT id FROM USER WHERE token = ?")) {
+      // warm up the JIT and the cache
+      lookups(select, tokens, binary, LOOKUPS / 4, new LatencyHistogram());
+      LatencyHistogram histogram = new LatencyHistogram();
+      long start = System.nanoTime();
+      lookups(select, tokens, binary, LOOKUPS, histogram);
+      System.out.printf("%-14s %12d %12d %10d %10d%n", token, indexBytes, (System.nanoTime() - start) / LOOKUPS,
+              histogram.percentileMicros(0.5), histogram.percentileMicros(0.99));
+    }
+  }
+
+  private static void lookups(PreparedStatement select, List<UUID> tokens, boolean binary, int count,
+                              LatencyHistogram histogram) throws SQLException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < count; i++) {
+      UUID token = tokens.get(random.nextInt(tokens.size()));
+      long start = System.nanoTime();
+      if (binary) {
+        select.setBytes(1, ByteBuffer.allocate(16)
+                .putLong(token.getMostSignificantBits()).putLong(token.getLeastSignificantBits()).array());
+      }
+      else {
+        select.setString(1, token.toString());
+      }
+      try (ResultSet rows = select.executeQuery()) {
+        if (!rows.next()) {
+          throw new IllegalStateException("token " + token + " not found");
+        }
+      }
+      histogram.record((System.nanoTime() - start) / 1000);
+    }
+  }
+}
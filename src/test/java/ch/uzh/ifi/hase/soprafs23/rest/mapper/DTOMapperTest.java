@@ -4,8 +4,11 @@ import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
 import org.junit.jupiter.api.Test;
 
+import java.util.UUID;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
@@ -33,7 +36,7 @@ public class DTOMapperTest {
     User user = new User();
     user.setUsername("firstname@lastname");
     user.setStatus(UserStatus.OFFLINE);
-    user.setToken("1");
+    user.setToken(UUID.randomUUID());
 
     // MAP -> Create UserGetDTO
     UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
@@ -43,4 +46,14 @@ public class DTOMapperTest {
     assertEquals(user.getUsername(), userGetDTO.getUsername());
     assertEquals(user.getStatus(), userGetDTO.getStatus());
   }
+
+  @Test
+  public void testGetToken_fromUser_toUserTokenDTO_success() {
+    User user = new User();
+    user.setToken(UUID.randomUUID());
+
+    UserTokenDTO userTokenDTO = DTOMapper.INSTANCE.convertUserToUserTokenDTO(user);
+
+    assertEquals(user.getToken().toString(), userTokenDTO.getToken());
+  }
 }
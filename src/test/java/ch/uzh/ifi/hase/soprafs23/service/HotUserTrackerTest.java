@@ -0,0 +1,111 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotUserTrackerTest {
+
+  @Test
+  public void width_roundedToPowerOfTwo() {
+    assertEquals(4096, new HotUserTracker(4096, 10, null).width());
+    assertEquals(8192, new HotUserTracker(5000, 10, null).width());
+  }
+
+  @Test
+  public void estimate_neverUndercounts() {
+    HotUserTracker tracker = new HotUserTracker(64, 10, null);
+    for (long id = 1; id <= 1000; id++) {
+      for (int i = 0; i < id % 7; i++) {
+        tracker.record(id);
+      }
+    }
+    for (long id = 1; id <= 1000; id++) {
+      assertTrue(tracker.estimate(id) >= id % 7);
+    }
+  }
+
+  @Test
+  public void top_returnsHeavyHittersHottestFirst() {
+    HotUserTracker tracker = new HotUserTracker(4096, 3, null);
+    for (int round = 0; round < 100; round++) {
+      tracker.record(7L);
+      tracker.record(7L);
+      tracker.record(8L);
+      if (round % 2 == 0) {
+        tracker.record(9L);
+      }
+      // a long tail of ids read once each
+      tracker.record(1000L + round);
+    }
+
+    List<Map<String, Object>> top = tracker.top(10);
+    assertEquals(3, top.size());
+    assertEquals(7L, top.get(0).get("id"));
+    assertEquals(8L, top.get(1).get("id"));
+    assertEquals(9L, top.get(2).get("id"));
+    assertEquals(200L, top.get(0).get("estimatedLookups"));
+    assertEquals(1, tracker.top(1).size());
+  }
+
+  @Test
+  public void decay_halvesCountsAndDropsColdIds() {
+    HotUserTracker tracker = new HotUserTracker(4096, 10, null);
+    for (int i = 0; i < 8; i++) {
+      tracker.record(1L);
+    }
+    tracker.record(2L);
+
+    tracker.decay();
+
+    assertEquals(4, tracker.estimate(1L));
+    assertEquals(0, tracker.estimate(2L));
+    List<Map<String, Object>> top = tracker.top(10);
+    assertEquals(1, top.size());
+    assertEquals(4L, top.get(0).get("estimatedLookups"));
+  }
+
+  @Test
+  public void record_null_isIgnored() {
+    HotUserTracker tracker = new HotUserTracker(4096, 10, null);
+    tracker.record(null);
+    assertTrue(tracker.top(10).isEmpty());
+  }
+
+  @Test
+  public void record_idBeatingTheSmallest_replacesIt() {
+    HotUserTracker tracker = new HotUserTracker(4096, 2, null);
+    tracker.record(1L);
+    tracker.record(2L);
+    tracker.record(2L);
+    tracker.record(2L);
+    // 3 has to beat 1 (one lookup) to get in
+    tracker.record(3L);
+    assertEquals(List.of(2L, 1L), tracker.topIds(10));
+    tracker.record(3L);
+
+    assertEquals(List.of(2L, 3L), tracker.topIds(10));
+  }
+
+  @Test
+  public void saveAndLoad_keepTheTopAcrossARestart(@TempDir Path directory) {
+    String file = directory.resolve("hot-users").toString();
+    HotUserTracker tracker = new HotUserTracker(4096, 10, file);
+    for (int i = 0; i < 3; i++) {
+      tracker.record(5L);
+    }
+    tracker.record(6L);
+    tracker.save();
+
+    HotUserTracker restarted = new HotUserTracker(4096, 10, file);
+    restarted.load();
+
+    assertEquals(List.of(5L, 6L), restarted.topIds(10));
+    assertEquals(3, restarted.estimate(5L));
+  }
+}
@@ -0,0 +1,159 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyStoreTest {
+
+  private static final byte[] BODY = IdempotencyStore.fingerprint("username", "password");
+
+  private IdempotencyStore store;
+
+  @BeforeEach
+  public void setup() {
+    store = new IdempotencyStore(60, 2, 5, false);
+  }
+
+  @Test
+  public void execute_sameKey_runsOnce() {
+    AtomicInteger calls = new AtomicInteger();
+
+    String first = store.execute("scope", "key", BODY, () -> "result-" + calls.incrementAndGet());
+    String second = store.execute("scope", "key", BODY, () -> "result-" + calls.incrementAndGet());
+
+    assertEquals("result-1", first);
+    assertEquals("result-1", second);
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void execute_inACluster_alwaysRuns() {
+    IdempotencyStore clustered = new IdempotencyStore(60, 2, 5, true);
+    AtomicInteger calls = new AtomicInteger();
+
+    clustered.execute("scope", "key", BODY, () -> "result-" + calls.incrementAndGet());
+    String second = clustered.execute("scope", "key", BODY, () -> "result-" + calls.incrementAndGet());
+
+    assertEquals("result-2", second);
+  }
+
+  @Test
+  public void execute_sameKeyDifferentBody_rejected() {
+    // "Aa" and "BB" have the same String.hashCode
+    store.execute("scope", "key", IdempotencyStore.fingerprint("username", "Aa"), () -> "result");
+
+    ResponseStatusException rejected = assertThrows(ResponseStatusException.class,
+        () -> store.execute("scope", "key", IdempotencyStore.fingerprint("username", "BB"), () -> "other"));
+    assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, rejected.getStatus());
+  }
+
+  @Test
+  public void fingerprint_fieldBoundariesMatter() {
+    assertArrayEquals(IdempotencyStore.fingerprint("ab", "c"), IdempotencyStore.fingerprint("ab", "c"));
+    assertFalse(Arrays.equals(IdempotencyStore.fingerprint("ab", "c"), IdempotencyStore.fingerprint("a", "bc")));
+    assertFalse(Arrays.equals(IdempotencyStore.fingerprint("", null), IdempotencyStore.fingerprint(null, "")));
+  }
+
+  @Test
+  public void execute_otherScope_runsAgain() {
+    AtomicInteger calls = new AtomicInteger();
+
+    store.execute("scope client-1", "key", BODY, calls::incrementAndGet);
+    store.execute("scope client-2", "key", BODY, calls::incrementAndGet);
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void execute_noKey_alwaysRuns() {
+    AtomicInteger calls = new AtomicInteger();
+
+    store.execute("scope", null, BODY, calls::incrementAndGet);
+    store.execute("scope", " ", BODY, calls::incrementAndGet);
+
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void execute_clientError_isReplayed() {
+    AtomicInteger calls = new AtomicInteger();
+    ResponseStatusException conflict = new ResponseStatusException(HttpStatus.CONFLICT, "taken");
+
+    assertThrows(ResponseStatusException.class, () -> store.execute("scope", "key", BODY, () -> {
+      calls.incrementAndGet();
+      throw conflict;
+    }));
+    ResponseStatusException replayed = assertThrows(ResponseStatusException.class,
+        () -> store.execute("scope", "key", BODY, calls::incrementAndGet));
+
+    assertSame(conflict, replayed);
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void execute_unexpectedError_isForgotten() {
+    assertThrows(IllegalStateException.class, () -> store.execute("scope", "key", BODY, () -> {
+      throw new IllegalStateException();
+    }));
+
+    assertEquals("second", store.execute("scope", "key", BODY, () -> "second"));
+  }
+
+  @Test
+  public void execute_isBounded() {
+    store.execute("scope", "a", BODY, () -> 1);
+    store.execute("scope", "b", BODY, () -> 2);
+    store.execute("scope", "c", BODY, () -> 3);
+
+    assertEquals(2, store.size());
+    // the eldest key was dropped and runs again
+    assertEquals(4, store.execute("scope", "a", BODY, () -> 4));
+  }
+
+  @Test
+  public void execute_concurrentDuplicate_waitsForFirst() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> first = executor.submit(() -> store.execute("scope", "key", BODY, () -> {
+        started.countDown();
+        await(release);
+        return calls.incrementAndGet();
+      }));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      Future<Integer> duplicate = executor.submit(() -> store.execute("scope", "key", BODY, calls::incrementAndGet));
+
+      release.countDown();
+
+      assertEquals(1, first.get(5, TimeUnit.SECONDS));
+      assertEquals(1, duplicate.get(5, TimeUnit.SECONDS));
+      assertEquals(1, calls.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
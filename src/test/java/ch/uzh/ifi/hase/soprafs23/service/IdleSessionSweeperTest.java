@@ -0,0 +1,190 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdleSessionSweeperTest {
+
+  @Mock
+  private UserRepository userRepository;
+
+  @Mock
+  private UserChangeLog userChangeLog;
+
+  @Mock
+  private UserStatsService userStatsService;
+
+  private SessionActivityTracker sessionActivityTracker;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    sessionActivityTracker = new SessionActivityTracker();
+    Mockito.when(userRepository.findIdsByStatus(UserStatus.ONLINE)).thenReturn(Collections.emptyList());
+    // every given user is ONLINE unless a test says otherwise
+    Mockito.when(userRepository.findByIdInAndStatusForUpdate(Mockito.any(), Mockito.eq(UserStatus.ONLINE)))
+        .thenAnswer(invocation -> users(invocation.getArgument(0)));
+    Mockito.when(userRepository.updateStatusByIdIn(Mockito.eq(UserStatus.OFFLINE), Mockito.any()))
+        .thenAnswer(invocation -> invocation.<List<Long>>getArgument(1).size());
+  }
+
+  private IdleSessionSweeper sweeper(long idleTimeoutMillis, int batchSize) {
+    return new IdleSessionSweeper(userRepository, sessionActivityTracker, userChangeLog, userStatsService,
+        new TransactionTemplate(new SynchronizingTransactionManager()), idleTimeoutMillis, batchSize);
+  }
+
+  /**
+   * no database, but commits and rollbacks run the transaction synchronizations like a real one
+   */
+  private static final class SynchronizingTransactionManager extends AbstractPlatformTransactionManager {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected Object doGetTransaction() {
+      return new Object();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+    }
+  }
+
+  private static List<User> users(Collection<Long> ids) {
+    List<User> users = new ArrayList<>();
+    for (Long id : ids) {
+      User user = new User();
+      user.setId(id);
+      user.setStatus(UserStatus.ONLINE);
+      users.add(user);
+    }
+    return users;
+  }
+
+  @Test
+  public void sweep_idleUsers_updatedInBatches() throws InterruptedException {
+    for (long id = 1; id <= 5; id++) {
+      sessionActivityTracker.touch(id, UUID.randomUUID());
+    }
+    Thread.sleep(200);
+    sessionActivityTracker.touch(6L, UUID.randomUUID());
+
+    sweeper(100, 2).sweep();
+
+    // 5 idle users in batches of 2 -> 3 statements
+    Mockito.verify(userRepository, Mockito.times(3)).updateStatusByIdIn(Mockito.eq(UserStatus.OFFLINE), Mockito.any());
+    Mockito.verify(userChangeLog, Mockito.times(5)).record(Mockito.eq(UserChangeType.LOGGED_OUT), Mockito.any());
+    assertEquals(1, sessionActivityTracker.size());
+    Mockito.verify(userStatsService, Mockito.times(3))
+        .statusChanged(Mockito.eq(UserStatus.ONLINE), Mockito.eq(UserStatus.OFFLINE), Mockito.anyLong());
+  }
+
+  @Test
+  public void sweep_recordsOnlyUsersThatWereOnline() throws InterruptedException {
+    sessionActivityTracker.touch(1L, UUID.randomUUID());
+    sessionActivityTracker.touch(2L, UUID.randomUUID());
+    Thread.sleep(200);
+    // user 2 logged out on another path or was deleted in the meantime
+    Mockito.when(userRepository.findByIdInAndStatusForUpdate(Mockito.any(), Mockito.eq(UserStatus.ONLINE)))
+        .thenReturn(users(List.of(1L)));
+
+    sweeper(100, 500).sweep();
+
+    Mockito.verify(userRepository).updateStatusByIdIn(UserStatus.OFFLINE, List.of(1L));
+    Mockito.verify(userChangeLog).record(UserChangeType.LOGGED_OUT, 1L);
+    Mockito.verify(userChangeLog, Mockito.never()).record(UserChangeType.LOGGED_OUT, 2L);
+    Mockito.verify(userStatsService).statusChanged(UserStatus.ONLINE, UserStatus.OFFLINE, 1);
+    assertEquals(0, sessionActivityTracker.size());
+  }
+
+  @Test
+  public void sweep_rolledBack_usersStayTrackedAndAreSweptAgain() throws InterruptedException {
+    sessionActivityTracker.touch(1L, UUID.randomUUID());
+    Thread.sleep(200);
+    Mockito.when(userRepository.updateStatusByIdIn(Mockito.eq(UserStatus.OFFLINE), Mockito.any()))
+        .thenThrow(new IllegalStateException("rolled back"));
+
+    IdleSessionSweeper sweeper = sweeper(100, 500);
+    assertThrows(IllegalStateException.class, sweeper::sweep);
+    assertEquals(1, sessionActivityTracker.size());
+
+    Mockito.reset(userRepository);
+    Mockito.when(userRepository.findByIdInAndStatusForUpdate(Mockito.any(), Mockito.eq(UserStatus.ONLINE)))
+        .thenAnswer(invocation -> users(invocation.getArgument(0)));
+    Mockito.when(userRepository.updateStatusByIdIn(Mockito.eq(UserStatus.OFFLINE), Mockito.any())).thenReturn(1);
+    // seeded already, the user is only found again because it is still tracked
+    sweeper.sweep();
+
+    Mockito.verify(userRepository).updateStatusByIdIn(UserStatus.OFFLINE, List.of(1L));
+    assertEquals(0, sessionActivityTracker.size());
+  }
+
+  @Test
+  public void sweep_userActiveAfterFoundIdle_staysOnline() throws InterruptedException {
+    UUID token = UUID.randomUUID();
+    sessionActivityTracker.touch(1L, token);
+    Thread.sleep(200);
+    // the user logs in again while the sweeper waits for the row lock
+    Mockito.when(userRepository.findByIdInAndStatusForUpdate(Mockito.any(), Mockito.eq(UserStatus.ONLINE)))
+        .thenAnswer(invocation -> {
+          sessionActivityTracker.touch(1L, token);
+          return users(invocation.getArgument(0));
+        });
+
+    sweeper(100, 500).sweep();
+
+    Mockito.verify(userRepository, Mockito.never()).updateStatusByIdIn(Mockito.any(), Mockito.any());
+    Mockito.verify(userChangeLog, Mockito.never()).record(Mockito.any(), Mockito.any());
+    assertEquals(1, sessionActivityTracker.size());
+  }
+
+  @Test
+  public void sweep_requestWithToken_keepsUserOnline() throws InterruptedException {
+    UUID token = UUID.randomUUID();
+    sessionActivityTracker.touch(1L, token);
+    Thread.sleep(200);
+    sessionActivityTracker.touchToken(token.toString());
+
+    sweeper(100, 500).sweep();
+
+    Mockito.verify(userRepository, Mockito.never()).updateStatusByIdIn(Mockito.any(), Mockito.any());
+    assertEquals(1, sessionActivityTracker.size());
+  }
+
+  @Test
+  public void sweep_seedsOnlineUsersWithoutActivity() {
+    Mockito.when(userRepository.findIdsByStatus(UserStatus.ONLINE)).thenReturn(Arrays.asList(7L, 8L));
+    sweeper(60_000, 500).sweep();
+
+    // seeded with the current time, so not idle yet
+    assertEquals(2, sessionActivityTracker.size());
+    Mockito.verify(userRepository, Mockito.never()).updateStatusByIdIn(Mockito.any(), Mockito.any());
+  }
+}
@@ -0,0 +1,69 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserChangeLogTest {
+
+  @Test
+  public void since_returnsChangesInOrder() {
+    UserChangeLog changeLog = new UserChangeLog(8);
+    changeLog.record(UserChangeType.CREATED, 1L);
+    changeLog.record(UserChangeType.UPDATED, 1L);
+    changeLog.record(UserChangeType.CREATED, 2L);
+
+    List<UserChange> changes = changeLog.since(1, 10);
+
+    assertEquals(2, changes.size());
+    assertEquals(2, changes.get(0).getSeq());
+    assertEquals(UserChangeType.UPDATED, changes.get(0).getType());
+    assertEquals(3, changes.get(1).getSeq());
+    assertEquals(2L, changes.get(1).getUserId());
+    assertTrue(changeLog.since(3, 10).isEmpty());
+  }
+
+  @Test
+  public void since_respectsLimit() {
+    UserChangeLog changeLog = new UserChangeLog(8);
+    for (long id = 1; id <= 5; id++) {
+      changeLog.record(UserChangeType.CREATED, id);
+    }
+
+    List<UserChange> changes = changeLog.since(0, 2);
+
+    assertEquals(2, changes.size());
+    assertEquals(2, changes.get(1).getSeq());
+  }
+
+  @Test
+  public void since_beyondRetention_throwsGone() {
+    UserChangeLog changeLog = new UserChangeLog(4);
+    for (long id = 1; id <= 10; id++) {
+      changeLog.record(UserChangeType.CREATED, id);
+    }
+
+    ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> changeLog.since(0, 10));
+    assertEquals(HttpStatus.GONE, e.getStatus());
+
+    List<UserChange> retained = changeLog.since(changeLog.lastSeq() - 4, 10);
+    assertEquals(4, retained.size());
+    assertEquals(10, retained.get(3).getSeq());
+  }
+
+  @Test
+  public void since_aheadOfLog_throwsGone() {
+    // e.g. a consumer that kept its since across a restart of the service
+    UserChangeLog changeLog = new UserChangeLog(8);
+    changeLog.record(UserChangeType.CREATED, 1L);
+
+    ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> changeLog.since(5, 10));
+    assertEquals(HttpStatus.GONE, e.getStatus());
+    assertTrue(changeLog.since(1, 10).isEmpty());
+  }
+}
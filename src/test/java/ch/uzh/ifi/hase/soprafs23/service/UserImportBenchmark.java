@@ -0,0 +1,65 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Imports one million generated CSV rows into H2 and prints the rate; the
+ * import should sustain at least 50k rows per second.
+ * Run with ./gradlew benchmark --tests '*UserImportBenchmark'
+ *
+ * On one core of a Xeon VM with JDK 17.0.9, in-memory H2 1.4.200:
+ *   imported 1000000 of 1000000 rows in 52176 ms, 19165 rows/s
+ * Short of the target: with one core the workers take turns, and H2 alone
+ * inserts about 30k users/s there (UserSnapshotRestoreBenchmark, no parsing
+ * or username check), so the target needs more than one core.
+ */
+@Tag("benchmark")
+@WebAppConfiguration
+@SpringBootTest
+public class UserImportBenchmark {
+
+  private static final int ROWS = 1_000_000;
+
+  @Autowired
+  private UserImportService userImportService;
+
+  @Test
+  public void importMillionRows() throws Exception {
+    UserImportReport report = userImportService.importUsers(generatedCsv(), UserImportService.Format.CSV);
+
+    System.out.printf("imported %d of %d rows in %d ms, %d rows/s%n", report.getImported(), report.getRowsRead(),
+            report.getElapsedMillis(), report.getRowsPerSecond());
+  }
+
+  /**
+   * generates the rows while they are read, like a large upload would arrive
+   */
+  private static InputStream generatedCsv() {
+    return new InputStream() {
+      private byte[] line = "username,password,birthday\n".getBytes(StandardCharsets.UTF_8);
+      private int position;
+      private int row;
+
+      @Override
+      public int read() {
+        if (position == line.length) {
+          if (row == ROWS) {
+            return -1;
+          }
+          row++;
+          line = String.format("bulk%d,password%d,19%02d-%02d-%02d%n", row, row, row % 100, 1 + row % 12, 1 + row % 28)
+                  .getBytes(StandardCharsets.UTF_8);
+          position = 0;
+        }
+        return line[position++];
+      }
+    };
+  }
+}
@@ -0,0 +1,171 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WebAppConfiguration
+@SpringBootTest(properties = {"import.chunk-size=2", "import.parallelism=2"})
+public class UserImportServiceIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserImportService userImportService;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+  }
+
+  private static InputStream stream(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void importCsv_validAndInvalidRows_reportsPerRow() throws Exception {
+    User existing = new User();
+    existing.setUsername("taken");
+    existing.setPassword("password");
+    userService.createUser(existing);
+
+    String csv = "password,username,birthday\n"
+            + "pw1,alice,1990-05-17\n"
+            + "pw2,bob,\n"
+            + "pw3,taken,\n"
+            + ",carol,\n"
+            + "pw5,dave,17.05.1990\n"
+            + "pw6,alice,\n"
+            + "\"p,w\"\"7\",erin,\n";
+
+    UserImportReport report = userImportService.importUsers(stream(csv), UserImportService.Format.CSV);
+
+    assertEquals(7, report.getRowsRead());
+    assertEquals(3, report.getImported());
+    assertEquals(4, report.getFailed());
+    List<UserImportReport.RowError> errors = report.getErrors();
+    assertEquals(4, errors.size());
+    assertEquals(4, errors.get(0).getLine());
+    assertTrue(errors.get(0).getMessage().contains("taken"));
+    assertEquals(5, errors.get(1).getLine());
+    assertEquals(6, errors.get(2).getLine());
+    assertEquals(7, errors.get(3).getLine());
+
+    User alice = userRepository.findByUsername("alice");
+    assertEquals("pw1", alice.getPassword());
+    assertEquals(UserStatus.OFFLINE, alice.getStatus());
+    assertNotNull(alice.getToken());
+    assertEquals(Integer.valueOf(517), alice.getBirthdayDay());
+    assertEquals("p,w\"7", userRepository.findByUsername("erin").getPassword());
+
+    // ids come from the JPA sequence, so regular signups keep working
+    User next = new User();
+    next.setUsername("afterImport");
+    next.setPassword("password");
+    assertNotNull(userService.createUser(next).getId());
+  }
+
+  @Test
+  public void importNdjson_importsUsers() throws Exception {
+    String ndjson = "{\"username\":\"frank\",\"password\":\"pw\",\"birthday\":\"2000-01-02\"}\n"
+            + "not json\n"
+            + "{\"username\":\"grace\",\"password\":\"pw\"}\n";
+
+    UserImportReport report = userImportService.importUsers(stream(ndjson), UserImportService.Format.NDJSON);
+
+    assertEquals(3, report.getRowsRead());
+    assertEquals(2, report.getImported());
+    assertEquals(2, report.getErrors().get(0).getLine());
+    assertNotNull(userRepository.findByUsername("grace"));
+    assertNotNull(userRepository.findByUsername("frank").getBirthday());
+  }
+
+  @Test
+  public void importNdjson_nonUtcDefaultZone_birthdayIsUtcMidnight() throws Exception {
+    TimeZone defaultZone = TimeZone.getDefault();
+    // ahead of UTC, local midnight would fall on the previous day in UTC
+    TimeZone.setDefault(TimeZone.getTimeZone("Europe/Zurich"));
+    try {
+      UserImportReport report = userImportService.importUsers(
+              stream("{\"username\":\"heidi\",\"password\":\"pw\",\"birthday\":\"1990-05-17\"}\n"),
+              UserImportService.Format.NDJSON);
+      assertEquals(1, report.getImported());
+
+      User heidi = userRepository.findByUsername("heidi");
+      assertEquals(Instant.parse("1990-05-17T00:00:00Z"), heidi.getBirthday().toInstant());
+      assertEquals(Integer.valueOf(517), heidi.getBirthdayDay());
+    }
+    finally {
+      TimeZone.setDefault(defaultZone);
+    }
+  }
+
+  @Test
+  public void importUsers_whileAnotherImportRuns_conflict() throws Exception {
+    PipedOutputStream writer = new PipedOutputStream();
+    PipedInputStream reader = new PipedInputStream(writer);
+    writer.write("username,password\nivan,pw\n".getBytes(StandardCharsets.UTF_8));
+    writer.flush();
+    // blocks on the open pipe until it is closed
+    CompletableFuture<UserImportReport> first = CompletableFuture.supplyAsync(() -> {
+      try {
+        return userImportService.importUsers(reader, UserImportService.Format.CSV);
+      }
+      catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    while (reader.available() > 0) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+
+    ResponseStatusException conflict = assertThrows(ResponseStatusException.class,
+            () -> userImportService.importUsers(stream("username,password\njudy,pw\n"), UserImportService.Format.CSV));
+    assertEquals(HttpStatus.CONFLICT, conflict.getStatus());
+
+    writer.close();
+    assertEquals(1, first.get(10, TimeUnit.SECONDS).getImported());
+    // the next import may run again
+    assertEquals(1, userImportService.importUsers(stream("username,password\njudy,pw\n"),
+            UserImportService.Format.CSV).getImported());
+  }
+
+  @Test
+  public void importCsv_missingHeaderColumn_badRequest() {
+    assertThrows(ResponseStatusException.class,
+            () -> userImportService.importUsers(stream("name,password\nx,y\n"), UserImportService.Format.CSV));
+  }
+
+  @Test
+  public void csvSplit_quotedFields() {
+    assertEquals(List.of("a", "b,c", "d\"e", ""),
+            UserImportService.CsvRowParser.split("a,\"b,c\",\"d\"\"e\","));
+  }
+}
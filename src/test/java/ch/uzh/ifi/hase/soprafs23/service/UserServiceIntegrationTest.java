@@ -8,12 +8,15 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,6 +36,9 @@ public class UserServiceIntegrationTest {
   @Autowired
   private UserService userService;
 
+  @Autowired
+  private DeletedUserPurger deletedUserPurger;
+
   @BeforeEach
   public void setup() {
     userRepository.deleteAll();
@@ -97,7 +103,48 @@ public class UserServiceIntegrationTest {
   public void matchToken_mismatch_throwsException() {
 
       User existingUser = new User();
-      existingUser.setToken("testToken");
+      existingUser.setToken(UUID.randomUUID());
       existingUser.setPassword("testPassword");
   }
+
+  @Test
+  public void deleteUser_hidesUserAndKeepsUsernameUntilPurged() {
+      User testUser = new User();
+      testUser.setPassword("testPassword");
+      testUser.setUsername("deletedUsername");
+      User created = userService.createUser(testUser);
+      String id = String.valueOf(created.getId());
+      String token = created.getToken().toString();
+      long total = userService.getStats(1).getTotal();
+
+      ResponseStatusException mismatch = assertThrows(ResponseStatusException.class,
+              () -> userService.deleteUser(id, UUID.randomUUID().toString()));
+      assertEquals(HttpStatus.UNAUTHORIZED, mismatch.getStatus());
+      assertEquals(total, userService.getStats(1).getTotal());
+
+      userService.deleteUser(id, token);
+
+      assertEquals(total - 1, userService.getStats(1).getTotal());
+      assertThrows(ResponseStatusException.class, () -> userService.getUserById(id));
+      // a second delete finds nothing and leaves the stats alone
+      assertThrows(ResponseStatusException.class, () -> userService.deleteUser(id, token));
+      assertEquals(total - 1, userService.getStats(1).getTotal());
+      assertNull(userRepository.findByUsername("deletedUsername"));
+
+      // the row still holds the username in the unique index
+      User sameUsername = new User();
+      sameUsername.setPassword("otherPassword");
+      sameUsername.setUsername("deletedUsername");
+      ResponseStatusException conflict = assertThrows(ResponseStatusException.class,
+              () -> userService.createUser(sameUsername));
+      assertEquals(HttpStatus.CONFLICT, conflict.getStatus());
+
+      assertEquals(0, deletedUserPurger.purgeDeletedBefore(new Timestamp(0)));
+      assertEquals(1, deletedUserPurger.purgeDeletedBefore(new Timestamp(System.currentTimeMillis() + 1000)));
+
+      User recreated = new User();
+      recreated.setPassword("otherPassword");
+      recreated.setUsername("deletedUsername");
+      assertNotNull(userService.createUser(recreated).getId());
+  }
 }
@@ -1,18 +1,21 @@
 package ch.uzh.ifi.hase.soprafs23.service;
 
+import ch.uzh.ifi.hase.soprafs23.cluster.UserDirectory;
+import ch.uzh.ifi.hase.soprafs23.constant.UserChangeType;
 import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs23.entity.User;
 import ch.uzh.ifi.hase.soprafs23.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs23.rest.dto.UserTokenDTO;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,7 +24,18 @@ public class UserServiceTest {
   @Mock
   private UserRepository userRepository;
 
-  @InjectMocks
+  @Mock
+  private UserChangeLog userChangeLog;
+
+  @Mock
+  private SessionActivityTracker sessionActivityTracker;
+
+  @Mock
+  private UserStatsService userStatsService;
+
+  @Mock
+  private HotUserTracker hotUserTracker;
+
   private UserService userService;
 
   private User testUser;
@@ -29,13 +43,17 @@ public class UserServiceTest {
   @BeforeEach
   public void setup() {
     MockitoAnnotations.openMocks(this);
+    // a single node directory, i.e. all lookups go to the mocked repository
+    UserDirectory userDirectory = new UserDirectory(userRepository, userChangeLog, null, false, "", "", 1, 1);
+    userService = new UserService(userRepository, userChangeLog, sessionActivityTracker, userStatsService,
+            hotUserTracker, userDirectory);
 
     // given
     testUser = new User();
     testUser.setId(1L);
     testUser.setPassword("testPassword");
     testUser.setUsername("testUsername");
-    testUser.setToken("1");
+    testUser.setToken(UUID.randomUUID());
 
     // when -> any object is being save in the userRepository -> return the dummy
     // testUser
@@ -56,6 +74,7 @@ public class UserServiceTest {
     assertEquals(testUser.getUsername(), createdUser.getUsername());
     assertNotNull(createdUser.getToken());
     assertEquals(UserStatus.ONLINE, createdUser.getStatus());
+    Mockito.verify(userChangeLog).record(UserChangeType.CREATED, testUser.getId());
   }
 
   @Test
@@ -84,11 +103,70 @@ public class UserServiceTest {
   @Test
   public void updateUser_nonExistentId_throwsException() {
       // assuming no user has been created yet --> can't be found by id --> cant be updated
-      Mockito.when(userRepository.findById(Mockito.any())).thenReturn(Optional.empty());
+      Mockito.when(userRepository.findByIdForUpdate(Mockito.any())).thenReturn(Optional.empty());
 
       assertThrows(ResponseStatusException.class, () -> userService.updateUser(testUser, "1"));
   }
 
+  @Test
+  public void validateUser_countsOnlyAChangedRow() {
+      testUser.setStatus(UserStatus.OFFLINE);
+      Mockito.when(userRepository.findByUsernameForUpdate("testUsername")).thenReturn(testUser);
+      // a concurrent login set the user ONLINE first, the UPDATE changes nothing
+      Mockito.when(userRepository.updateStatusByIdIn(Mockito.eq(UserStatus.ONLINE), Mockito.any())).thenReturn(0);
+
+      User login = new User();
+      login.setUsername("testUsername");
+      login.setPassword("testPassword");
+      User validated = userService.validateUser(login);
+
+      assertEquals(UserStatus.ONLINE, validated.getStatus());
+      Mockito.verify(userStatsService).statusChanged(UserStatus.OFFLINE, UserStatus.ONLINE, 0);
+  }
+
+  @Test
+  public void getUserById_nonNumericId_throwsNotFoundWithoutQuery() {
+      ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> userService.getUserById("../admin"));
+
+      assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+      assertEquals(0, e.getStackTrace().length);
+      Mockito.verify(userRepository, Mockito.never()).findById(Mockito.any());
+      // every call throws its own instance, and no cause can be attached to it
+      assertNotSame(e, assertThrows(ResponseStatusException.class, () -> userService.getUserById("../admin")));
+      assertThrows(IllegalStateException.class, () -> e.initCause(new RuntimeException()));
+  }
+
+  @Test
+  public void parseUserId_handlesOverflowAndGarbage() {
+      assertEquals(42L, UserService.parseUserId("42"));
+      assertEquals(Long.MAX_VALUE, UserService.parseUserId(String.valueOf(Long.MAX_VALUE)));
+      assertNull(UserService.parseUserId("9999999999999999999"));
+      assertNull(UserService.parseUserId("-1"));
+      assertNull(UserService.parseUserId(""));
+      assertNull(UserService.parseUserId("1a"));
+  }
+
+  @Test
+  public void parseToken_roundTripsAndRejectsMalformed() {
+      UUID token = UUID.randomUUID();
+
+      assertEquals(token, UserService.parseToken(token.toString()));
+      assertEquals(token, UserService.parseToken(token.toString().toUpperCase()));
+      assertNull(UserService.parseToken("1"));
+      assertNull(UserService.parseToken(token.toString().replace('-', 'x')));
+      assertNull(UserService.parseToken(token.toString().substring(1) + "g"));
+      // digits of other scripts, which Character.digit would accept
+      assertNull(UserService.parseToken(token.toString().substring(1) + "\uFF11"));
+      assertNull(UserService.parseToken("\u0661" + token.toString().substring(1)));
+  }
+
+  @Test
+  public void logout_malformedToken_throwsWithoutQuery() {
+      assertThrows(ResponseStatusException.class, () -> userService.logout("not-a-token"));
+
+      Mockito.verify(userRepository, Mockito.never()).findByToken(Mockito.any());
+  }
+
   // new
   @Test
   public void matchToken_mismatch_throwsException() {
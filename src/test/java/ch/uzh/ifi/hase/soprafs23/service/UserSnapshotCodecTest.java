@@ -0,0 +1,83 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserSnapshotCodecTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void writeThenRead_roundTripsAllRows() throws IOException {
+    Path file = directory.resolve("users.snap");
+    int count = UserSnapshotCodec.BLOCK_ROWS + 3;
+    try (UserSnapshotCodec.Writer writer = new UserSnapshotCodec.Writer(file)) {
+      for (int i = 0; i < count; i++) {
+        writer.append(i + 1, "user" + i, "p\u00e4ssword" + i, token(i), i % 2, 1_000_000L + i,
+            i % 3 == 0 ? null : 2_000_000L + i);
+      }
+    }
+
+    List<Object[]> rows = new ArrayList<>();
+    long read = UserSnapshotCodec.read(file, rows::add);
+
+    assertEquals(count, read);
+    assertEquals(count, rows.size());
+    Object[] row = rows.get(4);
+    assertEquals(5L, row[0]);
+    assertEquals("user4", row[1]);
+    assertEquals("p\u00e4ssword4", row[2]);
+    assertArrayEquals(token(4), (byte[]) row[3]);
+    assertEquals(0, row[4]);
+    assertEquals(new Timestamp(1_000_004L), row[5]);
+    assertEquals(new Timestamp(2_000_004L), row[6]);
+    assertNull(rows.get(3)[6]);
+  }
+
+  @Test
+  public void read_flippedByte_failsChecksum() throws IOException {
+    Path file = directory.resolve("users.snap");
+    try (UserSnapshotCodec.Writer writer = new UserSnapshotCodec.Writer(file)) {
+      writer.append(1, "user", "password", token(1), 0, 1L, null);
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      // first byte of the username inside the first block
+      channel.write(ByteBuffer.wrap(new byte[] {'X'}), 16 + 8 + 8 + 4);
+    }
+
+    assertThrows(IOException.class, () -> UserSnapshotCodec.read(file, row -> { }));
+  }
+
+  @Test
+  public void read_truncatedFile_fails() throws IOException {
+    Path file = directory.resolve("users.snap");
+    try (UserSnapshotCodec.Writer writer = new UserSnapshotCodec.Writer(file)) {
+      writer.append(1, "user", "password", token(1), 0, 1L, null);
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 4);
+    }
+
+    assertThrows(IOException.class, () -> UserSnapshotCodec.read(file, row -> { }));
+  }
+
+  private static byte[] token(int seed) {
+    byte[] token = new byte[16];
+    for (int i = 0; i < token.length; i++) {
+      token[i] = (byte) (seed * 31 + i);
+    }
+    return token;
+  }
+}
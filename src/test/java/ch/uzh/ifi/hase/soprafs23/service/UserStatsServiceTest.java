@@ -0,0 +1,107 @@
+package ch.uzh.ifi.hase.soprafs23.service;
+
+import ch.uzh.ifi.hase.soprafs23.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs23.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UserStatsServiceTest {
+
+  private final UserStatsService userStatsService = new UserStatsService(null);
+
+  @Test
+  public void userCreated_countsStatusDayAndBirthday() {
+    userStatsService.userCreated(user(UserStatus.ONLINE, new Date(), date(2000, 3, 14)));
+    userStatsService.userCreated(user(UserStatus.ONLINE, new Date(), null));
+
+    UserStats stats = userStatsService.getStats(7);
+
+    assertEquals(2, stats.getTotal());
+    assertEquals(2L, stats.getByStatus().get(UserStatus.ONLINE));
+    assertEquals(0L, stats.getByStatus().get(UserStatus.OFFLINE));
+    assertEquals(7, stats.getSignupsPerDay().size());
+    assertEquals(2L, stats.getSignupsPerDay().get(LocalDate.now(ZoneOffset.UTC).toString()));
+    assertEquals(1L, stats.getBirthdaysPerMonth().get(Month.MARCH));
+  }
+
+  @Test
+  public void statusAndBirthdayChanges_moveCounts() {
+    userStatsService.userCreated(user(UserStatus.ONLINE, new Date(), date(2000, 3, 14)));
+
+    userStatsService.statusChanged(UserStatus.ONLINE, UserStatus.OFFLINE, 1);
+    userStatsService.birthdayChanged(date(2000, 3, 14), date(2000, 12, 1));
+
+    UserStats stats = userStatsService.getStats(1);
+
+    assertEquals(1, stats.getTotal());
+    assertEquals(0L, stats.getByStatus().get(UserStatus.ONLINE));
+    assertEquals(1L, stats.getByStatus().get(UserStatus.OFFLINE));
+    assertEquals(0L, stats.getBirthdaysPerMonth().get(Month.MARCH));
+    assertEquals(1L, stats.getBirthdaysPerMonth().get(Month.DECEMBER));
+  }
+
+  @Test
+  public void userDeleted_removesAllCounts() {
+    User user = user(UserStatus.OFFLINE, new Date(), date(2000, 3, 14));
+    userStatsService.userCreated(user);
+
+    userStatsService.userDeleted(user);
+
+    UserStats stats = userStatsService.getStats(1);
+
+    assertEquals(0, stats.getTotal());
+    assertEquals(0L, stats.getByStatus().get(UserStatus.OFFLINE));
+    assertEquals(0L, stats.getSignupsPerDay().get(LocalDate.now(ZoneOffset.UTC).toString()));
+    assertEquals(0L, stats.getBirthdaysPerMonth().get(Month.MARCH));
+  }
+
+  @Test
+  public void changesInTransaction_onlyAppliedOnCommit() {
+    userStatsService.userCreated(user(UserStatus.OFFLINE, new Date(), null));
+
+    // rolled back: nothing changes
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      userStatsService.statusChanged(UserStatus.OFFLINE, UserStatus.ONLINE, 1);
+      userStatsService.userCreated(user(UserStatus.ONLINE, new Date(), null));
+      assertEquals(1, userStatsService.getStats(1).getTotal());
+    }
+    finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    assertEquals(1L, userStatsService.getStats(1).getByStatus().get(UserStatus.OFFLINE));
+
+    // committed: applied once the transaction commits
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      userStatsService.statusChanged(UserStatus.OFFLINE, UserStatus.ONLINE, 1);
+      assertEquals(0L, userStatsService.getStats(1).getByStatus().get(UserStatus.ONLINE));
+      TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+    }
+    finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    assertEquals(1L, userStatsService.getStats(1).getByStatus().get(UserStatus.ONLINE));
+    assertEquals(0L, userStatsService.getStats(1).getByStatus().get(UserStatus.OFFLINE));
+  }
+
+  private static User user(UserStatus status, Date creationDate, Date birthday) {
+    User user = new User();
+    user.setStatus(status);
+    user.setCreation_date(creationDate);
+    user.setBirthday(birthday);
+    return user;
+  }
+
+  private static Date date(int year, int month, int day) {
+    return Date.from(LocalDate.of(year, month, day).atStartOfDay(ZoneOffset.UTC).toInstant());
+  }
+}